@@ -0,0 +1,145 @@
+package messaging;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Random gets and puts of existing keys in a ConcurrentLongMap and a
+ * ConcurrentHashMap with boxed keys, both holding `size` entries keyed by
+ * consecutive ids like the ones MessageDao hands out. Puts replace existing
+ * entries, so the maps do not grow while measured. The `contended`
+ * variants run on 4 threads sharing one map.
+ *
+ * The heap each map retains per entry is printed when it is filled, with
+ * every entry sharing one value so only the map itself is counted.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ConcurrentLongMapBenchmark {
+
+    private static final Object VALUE = new Object();
+
+    @State(Scope.Benchmark)
+    public static class LongMapState {
+
+        @Param({"1000000", "10000000"})
+        public int size;
+
+        private ConcurrentLongMap<Object> map;
+
+        @Setup
+        public void setUp() {
+
+            long before = usedHeap();
+            map = new ConcurrentLongMap<>();
+
+            for(long key = 1; key <= size; key++) {
+                map.put(key, VALUE);
+            }
+
+            printFootprint("ConcurrentLongMap", size, usedHeap() - before);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class HashMapState {
+
+        @Param({"1000000", "10000000"})
+        public int size;
+
+        private ConcurrentHashMap<Long, Object> map;
+
+        @Setup
+        public void setUp() {
+
+            long before = usedHeap();
+            map = new ConcurrentHashMap<>();
+
+            for(long key = 1; key <= size; key++) {
+                map.put(key, VALUE);
+            }
+
+            printFootprint("ConcurrentHashMap", size, usedHeap() - before);
+        }
+    }
+
+    private static long randomKey(int size) {
+        return ThreadLocalRandom.current().nextLong(1, size + 1);
+    }
+
+    @Benchmark
+    public Object concurrentLongMapGet(LongMapState state) {
+        return state.map.get(randomKey(state.size));
+    }
+
+    @Benchmark
+    public Object concurrentLongMapPut(LongMapState state) {
+        return state.map.put(randomKey(state.size), VALUE);
+    }
+
+    @Benchmark
+    public Object concurrentHashMapGet(HashMapState state) {
+        return state.map.get(randomKey(state.size));
+    }
+
+    @Benchmark
+    public Object concurrentHashMapPut(HashMapState state) {
+        return state.map.put(randomKey(state.size), VALUE);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object concurrentLongMapGetContended(LongMapState state) {
+        return state.map.get(randomKey(state.size));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object concurrentLongMapPutContended(LongMapState state) {
+        return state.map.put(randomKey(state.size), VALUE);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object concurrentHashMapGetContended(HashMapState state) {
+        return state.map.get(randomKey(state.size));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object concurrentHashMapPutContended(HashMapState state) {
+        return state.map.put(randomKey(state.size), VALUE);
+    }
+
+    /**
+     * Heap in use after collecting garbage, as far as System.gc() does
+     */
+    private static long usedHeap() {
+
+        Runtime runtime = Runtime.getRuntime();
+
+        for(int i = 0; i < 3; i++) {
+            System.gc();
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void printFootprint(String map, int size, long bytes) {
+        System.out.printf("%n%s of %d entries: %d MB, %.1f bytes per entry%n",
+                map, size, bytes >> 20, (double) bytes / size);
+    }
+}
@@ -0,0 +1,82 @@
+package messaging;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single operations of an in-memory MessageDao holding `size` messages in
+ * a `store` store. Run with `-Pjmh.args="-t 4"` and other thread counts to
+ * see how the operations scale.
+ *
+ * The MessageDao stays at `size` messages throughout: `add` removes the
+ * oldest message for each one it adds, and `addThenRemove` removes the
+ * message it just added, so both include the cost of a removal. Updates
+ * replace existing messages with new ones.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MessageDaoBenchmark {
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    @Param({"heap", "offheap"})
+    public String store;
+
+    private MessageDao messageDao;
+
+    @Setup
+    public void setUp() {
+
+        messageDao = new MessageDao(store.equals("heap")
+                ? new HeapMessageStore()
+                : new OffHeapMessageStore(4 << 20));
+
+        for(int i = 0; i < size; i++) {
+            messageDao.add(new Message("user" + (i % 100), "Message number " + i + " of the benchmark"));
+        }
+    }
+
+    private long randomId() {
+        return ThreadLocalRandom.current().nextLong(1, size + 1);
+    }
+
+    @Benchmark
+    public Message get() {
+        return messageDao.get(randomId());
+    }
+
+    @Benchmark
+    public long add() {
+        long id = messageDao.add(new Message("user", "A new message of about the usual length"));
+        // Ids are consecutive, so this is the oldest message left
+        messageDao.remove(id - size);
+        return id;
+    }
+
+    @Benchmark
+    public void update() {
+        messageDao.update(randomId(), new Message("user", "An updated message of about the usual length"));
+    }
+
+    @Benchmark
+    public void addThenRemove() {
+        messageDao.remove(messageDao.add(new Message("user", "A new message of about the usual length")));
+    }
+}
@@ -0,0 +1,71 @@
+package messaging;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listing every message of an in-memory MessageDao, both as a String with
+ * getAllMessages() and streamed like GET /message does
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class MessageListingBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private MessageDao messageDao;
+
+    @Setup
+    public void setUp() {
+
+        messageDao = new MessageDao();
+
+        for(int i = 0; i < size; i++) {
+            messageDao.add(new Message("user" + (i % 100), "Message number " + i + " of the benchmark"));
+        }
+    }
+
+    @Benchmark
+    public String getAllMessages() {
+        return messageDao.getAllMessages();
+    }
+
+    @Benchmark
+    public long writeAllMessages() throws IOException {
+        CountingOutputStream output = new CountingOutputStream();
+        messageDao.writeAllMessages(output);
+        return output.count;
+    }
+
+    /**
+     * Discards what is written, like a fast client would
+     */
+    private static class CountingOutputStream extends OutputStream {
+
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
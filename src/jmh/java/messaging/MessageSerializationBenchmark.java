@@ -0,0 +1,160 @@
+package messaging;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding a single message and a page of 50 messages, with
+ * the org.json trees responses used to be built with as the baseline, the
+ * Json MessageBodyWriters write now, and CBOR. The encoded sizes are printed
+ * when the benchmark starts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MessageSerializationBenchmark {
+
+    private Message message;
+    private MessagePage page;
+    private String orgJsonPage;
+    private byte[] jsonPage;
+    private byte[] cborPage;
+
+    @Setup
+    public void setUp() throws IOException {
+
+        message = new Message("linda", "Hello everyone, this is a message of about the usual length åäö");
+
+        Map<Long, Message> messages = new LinkedHashMap<>();
+        for(long id = 1; id <= 50; id++) {
+            messages.put(id, new Message("user" + id, "Message number " + id + " of the benchmark"));
+        }
+        page = new MessagePage(messages, 50L, null);
+
+        orgJsonPage = orgJsonPage();
+        jsonPage = jsonPage();
+        cborPage = cborPage();
+
+        System.out.println("Page of 50 messages: org.json " + orgJsonPage.getBytes(StandardCharsets.UTF_8).length +
+                " bytes, Jackson Json " + jsonPage.length + " bytes, CBOR " + cborPage.length + " bytes");
+    }
+
+    @Benchmark
+    public String messageOrgJson() {
+        JSONObject object = new JSONObject();
+        object.put("author", message.getAuthor());
+        object.put("content", message.getContent());
+        return object.toString();
+    }
+
+    /**
+     * Message.toString() writes the Json every time, unlike toJson()
+     */
+    @Benchmark
+    public String messageToString() {
+        return message.toString();
+    }
+
+    @Benchmark
+    public byte[] messageToJsonCached() {
+        return message.toJson();
+    }
+
+    @Benchmark
+    public byte[] messageCbor() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(128);
+        try(JsonGenerator generator = MessageCborWriter.CBOR.createGenerator(output)) {
+            message.write(generator);
+        }
+        return output.toByteArray();
+    }
+
+    @Benchmark
+    public String orgJsonPage() {
+        JSONArray array = new JSONArray();
+
+        for(Map.Entry<Long, Message> entry : page.getMessages().entrySet()) {
+            JSONObject object = new JSONObject();
+            object.put("id", entry.getKey());
+            object.put("author", entry.getValue().getAuthor());
+            object.put("content", entry.getValue().getContent());
+            array.put(object);
+        }
+
+        JSONObject object = new JSONObject();
+        object.put("messages", array);
+        object.put("next", page.getNext());
+        object.put("previous", page.getPrevious());
+        return object.toString();
+    }
+
+    @Benchmark
+    public byte[] jsonPage() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(4096);
+        try(JsonGenerator generator = MessageJsonWriter.JSON.createGenerator(output, JsonEncoding.UTF8)) {
+            page.write(generator);
+        }
+        return output.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] cborPage() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(4096);
+        try(JsonGenerator generator = MessageCborWriter.CBOR.createGenerator(output)) {
+            page.write(generator);
+        }
+        return output.toByteArray();
+    }
+
+    @Benchmark
+    public int decodeOrgJsonPage() {
+        return new JSONObject(orgJsonPage).getJSONArray("messages").length();
+    }
+
+    /**
+     * Reads every token, like a streaming client would
+     */
+    @Benchmark
+    public int decodeJsonPage() throws IOException {
+        try(JsonParser parser = MessageJsonWriter.JSON.createParser(jsonPage)) {
+            return readStrings(parser);
+        }
+    }
+
+    @Benchmark
+    public int decodeCborPage() throws IOException {
+        try(JsonParser parser = MessageCborWriter.CBOR.createParser(cborPage)) {
+            return readStrings(parser);
+        }
+    }
+
+    private static int readStrings(JsonParser parser) throws IOException {
+        int strings = 0;
+        JsonToken token;
+        while((token = parser.nextToken()) != null) {
+            if(token == JsonToken.VALUE_STRING) {
+                parser.getText();
+                strings++;
+            }
+        }
+        return strings;
+    }
+}
@@ -0,0 +1,356 @@
+package messaging;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.glassfish.grizzly.http.server.HttpServer;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a mix of requests against the API at a fixed arrival rate and
+ * reports throughput and latency percentiles per endpoint:
+ *
+ *     gradle loadTest -Dloadtest.rate=2000 -Dloadtest.mix=get=80,post=20
+ *
+ * Requests are started on schedule whether or not earlier ones have
+ * finished, and latency is measured from when a request was due rather than
+ * when a thread got to send it, so a server that stalls is charged for
+ * every request it held up (no coordinated omission).
+ *
+ * Unless `loadtest.url` names a running server, the application is started
+ * in-process on an embedded Grizzly server, with rate limiting off unless
+ * the `messaging.rateLimit` properties say otherwise. Configured by the
+ * system properties
+ *
+ * - `loadtest.rate`, requests per second (default 500)
+ * - `loadtest.duration` and `loadtest.warmup`, seconds measured and
+ *   seconds run before measuring (default 30 and 5)
+ * - `loadtest.mix`, relative weights of the operations (default
+ *   get=60,list=10,post=15,put=10,delete=5)
+ * - `loadtest.threads`, maximum number of requests in flight (default 64)
+ * - `loadtest.messages`, messages each user posts before starting (default 1000)
+ * - `loadtest.users`, comma separated username:password pairs (default the
+ *   bundled users)
+ * - `loadtest.reportDir`, directory to write a histogram per operation to
+ */
+public class LoadTest {
+
+    private static final long HIGHEST_LATENCY = TimeUnit.MINUTES.toNanos(1);
+    private static final String CONTENT = "A load test message of about the usual length";
+
+    enum Operation {
+        GET, LIST, POST, PUT, DELETE
+    }
+
+    private final URI base;
+    private final List<Client> clients = new ArrayList<>();
+    private final Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, AtomicLong> errors = new EnumMap<>(Operation.class);
+    private final Operation[] mix;
+    private volatile long seeded;
+
+    private LoadTest(URI base, String users, String mix) {
+
+        this.base = base;
+
+        for(String user : users.split(",")) {
+            String[] usernameAndPassword = user.trim().split(":", 2);
+            this.clients.add(new Client(usernameAndPassword[0], usernameAndPassword[1]));
+        }
+
+        List<Operation> weighted = new ArrayList<>();
+        for(String weight : mix.split(",")) {
+            String[] operationAndWeight = weight.trim().split("=");
+            Operation operation = Operation.valueOf(operationAndWeight[0].toUpperCase(Locale.ROOT));
+            for(int i = Integer.parseInt(operationAndWeight[1]); i > 0; i--) {
+                weighted.add(operation);
+            }
+        }
+        this.mix = weighted.toArray(new Operation[0]);
+
+        for(Operation operation : Operation.values()) {
+            latencies.put(operation, new ConcurrentHistogram(HIGHEST_LATENCY, 3));
+            errors.put(operation, new AtomicLong());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int threads = Integer.getInteger("loadtest.threads", 64);
+        // Keep a connection per thread instead of the JDK default of 5
+        System.setProperty("http.maxConnections", Integer.toString(threads));
+
+        String url = System.getProperty("loadtest.url");
+        HttpServer server = null;
+
+        if(url == null) {
+            for(String limit : new String[] {"messaging.rateLimit.reads", "messaging.rateLimit.writes"}) {
+                if(System.getProperty(limit) == null) {
+                    System.setProperty(limit, "0");
+                }
+            }
+            url = "http://localhost:" + Integer.getInteger("loadtest.port", 9090) + Launcher.CONTEXT_PATH;
+            int processors = Runtime.getRuntime().availableProcessors();
+            server = Launcher.start(URI.create(url), new Application(), processors, 2 * processors);
+        }
+
+        LoadTest test = new LoadTest(URI.create(url),
+                System.getProperty("loadtest.users", "linda:password,anna:password"),
+                System.getProperty("loadtest.mix", "get=60,list=10,post=15,put=10,delete=5"));
+
+        try {
+            test.seed(Integer.getInteger("loadtest.messages", 1000));
+            test.run(Integer.getInteger("loadtest.rate", 500),
+                    Integer.getInteger("loadtest.warmup", 5),
+                    Integer.getInteger("loadtest.duration", 30),
+                    threads);
+        } finally {
+            if(server != null) {
+                server.shutdownNow();
+            }
+        }
+
+        test.report(System.out, Integer.getInteger("loadtest.duration", 30));
+
+        String reportDir = System.getProperty("loadtest.reportDir");
+        if(reportDir != null) {
+            test.writeHistograms(Files.createDirectories(Paths.get(reportDir)));
+        }
+    }
+
+    /**
+     * Posts `messages` messages as each user, for the later requests to
+     * read, edit and delete
+     */
+    private void seed(int messages) throws IOException {
+        for(Client client : clients) {
+            for(int i = 0; i < messages; i++) {
+                client.owned.add(post(client));
+            }
+        }
+        seeded = (long) messages * clients.size();
+    }
+
+    /**
+     * Starts a random operation every 1/`rate` seconds for `warmup` plus
+     * `duration` seconds, recording the latencies of those started after
+     * the warmup
+     */
+    private void run(int rate, int warmup, int duration, int threads) throws InterruptedException {
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "loadtest");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmup);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(duration);
+
+        for(long due = start; due - end < 0; due += interval) {
+
+            long wait = due - System.nanoTime();
+            if(wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            long scheduled = due;
+            Operation operation = mix[ThreadLocalRandom.current().nextInt(mix.length)];
+            Client client = clients.get(ThreadLocalRandom.current().nextInt(clients.size()));
+
+            executor.execute(() -> {
+                boolean ok = execute(operation, client);
+                if(scheduled - measureFrom >= 0) {
+                    latencies.get(operation).recordValue(
+                            Math.min(System.nanoTime() - scheduled, HIGHEST_LATENCY));
+                    if( ! ok) {
+                        errors.get(operation).incrementAndGet();
+                    }
+                }
+            });
+        }
+
+        executor.shutdown();
+        if( ! executor.awaitTermination(1, TimeUnit.MINUTES)) {
+            System.err.println("Requests still running after one minute, reporting without them");
+        }
+    }
+
+    /**
+     * Runs `operation` as `client` and returns whether it got the expected
+     * status
+     */
+    private boolean execute(Operation operation, Client client) {
+        try {
+            switch (operation) {
+                case GET:
+                    long id = ThreadLocalRandom.current().nextLong(1, seeded + 1);
+                    // Some messages may have been deleted
+                    int status = request("GET", "message/" + id, client, null).status;
+                    return status == 200 || status == 404;
+                case LIST:
+                    return request("GET", "message?limit=50", client, null).status == 200;
+                case POST:
+                    client.posted.add(post(client));
+                    return true;
+                case PUT:
+                    long owned = client.owned.get(ThreadLocalRandom.current().nextInt(client.owned.size()));
+                    return request("PUT", "message/" + owned, client, CONTENT).status == 200;
+                default:
+                    Long posted = client.posted.poll();
+                    if(posted == null) {
+                        // Nothing of this run left to delete, so post instead
+                        client.posted.add(post(client));
+                        return true;
+                    }
+                    return request("DELETE", "message/" + posted, client, null).status == 202;
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private long post(Client client) throws IOException {
+
+        Result result = request("POST", "message", client, CONTENT);
+
+        if(result.status != 201 || result.location == null) {
+            throw new IOException("POST failed with status " + result.status);
+        }
+
+        String location = result.location;
+        return Long.parseLong(location.substring(location.lastIndexOf('/') + 1));
+    }
+
+    private Result request(String method, String path, Client client, String body) throws IOException {
+
+        URL url = base.resolve(path).toURL();
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        connection.setRequestProperty("Authorization", client.authorization);
+
+        if(body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "text/plain; charset=UTF-8");
+            try(OutputStream output = connection.getOutputStream()) {
+                output.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        int status = connection.getResponseCode();
+
+        // Read the whole body so the connection can be reused
+        try(InputStream input = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            if(input != null) {
+                drain(input);
+            }
+        }
+
+        return new Result(status, connection.getHeaderField("Location"));
+    }
+
+    private static void drain(InputStream input) throws IOException {
+        byte[] buffer = new byte[8192];
+        while(input.read(buffer) >= 0) {
+            // Discard
+        }
+    }
+
+    private void report(PrintStream out, int duration) {
+
+        out.printf("%-8s %10s %10s %8s %10s %10s %10s %10s%n",
+                "", "requests", "req/s", "errors", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+
+        for(Operation operation : Operation.values()) {
+            Histogram histogram = latencies.get(operation);
+
+            if(histogram.getTotalCount() == 0) {
+                continue;
+            }
+
+            out.printf("%-8s %10d %10.1f %8d %10.2f %10.2f %10.2f %10.2f%n",
+                    operation.name().toLowerCase(Locale.ROOT),
+                    histogram.getTotalCount(),
+                    histogram.getTotalCount() / (double) duration,
+                    errors.get(operation).get(),
+                    millis(histogram.getValueAtPercentile(50)),
+                    millis(histogram.getValueAtPercentile(99)),
+                    millis(histogram.getValueAtPercentile(99.9)),
+                    millis(histogram.getMaxValue()));
+        }
+    }
+
+    /**
+     * Writes the full percentile distribution of each operation, in the
+     * format HdrHistogram plotters read
+     */
+    private void writeHistograms(Path dir) throws IOException {
+        for(Operation operation : Operation.values()) {
+            Histogram histogram = latencies.get(operation);
+            if(histogram.getTotalCount() == 0) {
+                continue;
+            }
+
+            Path file = dir.resolve(operation.name().toLowerCase(Locale.ROOT) + ".hgrm");
+            try(PrintStream out = new PrintStream(new FileOutputStream(file.toFile()), false, "UTF-8")) {
+                histogram.outputPercentileDistribution(out, 1e6);
+            }
+        }
+        System.out.println("Histograms written to " + dir);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static class Client {
+
+        private final String authorization;
+        // Messages posted before the run, which are edited but never deleted
+        private final List<Long> owned = new ArrayList<>();
+        // Messages posted during the run, which are deleted
+        private final ConcurrentLinkedQueue<Long> posted = new ConcurrentLinkedQueue<>();
+
+        private Client(String username, String password) {
+            this.authorization = "Basic " + Base64.getEncoder().encodeToString(
+                    (username + ":" + password).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static class Result {
+
+        private final int status;
+        private final String location;
+
+        private Result(int status, String location) {
+            this.status = status;
+            this.location = location;
+        }
+    }
+}
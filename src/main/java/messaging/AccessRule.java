@@ -0,0 +1,77 @@
+package messaging;
+
+import java.lang.reflect.Method;
+
+import javax.annotation.security.DenyAll;
+import javax.annotation.security.PermitAll;
+import javax.annotation.security.RolesAllowed;
+
+/**
+ * Immutable access rule of a resource method, resolved once from its
+ * PermitAll, DenyAll and RolesAllowed annotations
+ */
+public final class AccessRule {
+
+    private final boolean permitAll;
+    private final boolean denyAll;
+    // Null when any authenticated user is allowed
+    private final String[] rolesAllowed;
+
+    private AccessRule(boolean permitAll, boolean denyAll, String[] rolesAllowed) {
+        this.permitAll = permitAll;
+        this.denyAll = denyAll;
+        this.rolesAllowed = rolesAllowed;
+    }
+
+    /**
+     * Resolves the rule of `method` of `resourceClass`, where annotations
+     * on the method take precedence over those on the class
+     */
+    public static AccessRule of(Method method, Class<?> resourceClass) {
+
+        if(method.isAnnotationPresent(PermitAll.class)
+                || method.isAnnotationPresent(DenyAll.class)
+                || method.isAnnotationPresent(RolesAllowed.class)) {
+            return of(method.getAnnotation(PermitAll.class),
+                    method.getAnnotation(DenyAll.class),
+                    method.getAnnotation(RolesAllowed.class));
+        }
+
+        return of(resourceClass.getAnnotation(PermitAll.class),
+                resourceClass.getAnnotation(DenyAll.class),
+                resourceClass.getAnnotation(RolesAllowed.class));
+    }
+
+    private static AccessRule of(PermitAll permitAll, DenyAll denyAll, RolesAllowed rolesAllowed) {
+        return new AccessRule(permitAll != null, denyAll != null,
+                rolesAllowed == null ? null : rolesAllowed.value().clone());
+    }
+
+    /**
+     * Whether requests are allowed without authenticating
+     */
+    public boolean isPermitAll() {
+        return permitAll;
+    }
+
+    public boolean isDenyAll() {
+        return denyAll;
+    }
+
+    /**
+     * Whether the authenticated `user` may access the method
+     */
+    public boolean allows(User user) {
+
+        if(rolesAllowed == null) {
+            return true;
+        }
+
+        for(String role : rolesAllowed) {
+            if(user.hasRole(role)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,14 +1,87 @@
 package messaging;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.TimeUnit;
 import javax.ws.rs.ApplicationPath;
+import org.glassfish.jersey.CommonProperties;
+import org.glassfish.jersey.media.sse.SseFeature;
 import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.server.ServerProperties;
+import org.glassfish.jersey.server.spi.AbstractContainerLifecycleListener;
+import org.glassfish.jersey.server.spi.Container;
 
+/**
+ * Owns the MessageDao, the event streams and the bulkheads of one
+ * deployment, hands them to MessageController and closes them when the
+ * container shuts down, so every Application starts from fresh state.
+ */
 @ApplicationPath("/")
 public class Application extends ResourceConfig {
 
+    private final MessageDao messageDao;
+    private final MessageEvents messageEvents;
+    private final Bulkhead bulkReads;
+    private final Bulkhead pointReads;
+    private final Bulkhead writes;
+
+    /**
+     * Serves the MessageDao configured by the system properties to the
+     * users of the default AuthenticationFeature
+     */
     public Application() {
-        packages(this.getClass().getPackage().getName());
-        register(AuthenticationFilter.class);
+        this(MessageDao.fromSystemProperties(), new AuthenticationFeature());
+    }
+
+    /**
+     * Serves `messageDao` to the users `authentication` accepts, and closes
+     * `messageDao` on shutdown
+     */
+    public Application(MessageDao messageDao, AuthenticationFeature authentication) {
+
+        this.messageDao = messageDao;
+        this.messageEvents = MessageEvents.fromSystemProperties(messageDao);
+        this.bulkReads = Bulkhead.fromSystemProperties("bulkReads", 4, 64);
+        this.pointReads = Bulkhead.fromSystemProperties("pointReads", 16, 256);
+        this.writes = Bulkhead.fromSystemProperties("writes", 8, 256);
+
+        // Everything is registered explicitly, as scanning the classpath and
+        // discovering features would only slow down startup
+        register(new MessageController(messageDao, messageEvents, bulkReads, pointReads, writes));
+        register(authentication);
+        register(MessageJsonWriter.class);
+        register(MessageCborWriter.class);
+        register(SseFeature.class);
+        property(CommonProperties.FEATURE_AUTO_DISCOVERY_DISABLE, true);
+        property(ServerProperties.WADL_FEATURE_DISABLE, true);
+        register(new AbstractContainerLifecycleListener() {
+            @Override
+            public void onShutdown(Container container) {
+                shutdown();
+            }
+        });
     }
 
+    public MessageDao getMessageDao() {
+        return messageDao;
+    }
+
+    private void shutdown() {
+
+        messageEvents.close();
+        // Let requests already running finish before closing the
+        // MessageDao under them
+        for(Bulkhead bulkhead : new Bulkhead[] {bulkReads, pointReads, writes}) {
+            bulkhead.close();
+        }
+        // Make sure everything logged so far is durable before undeploying
+        try {
+            writes.awaitTermination(10, TimeUnit.SECONDS);
+            messageDao.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 }
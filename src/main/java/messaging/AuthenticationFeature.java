@@ -0,0 +1,64 @@
+package messaging;
+
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.GET;
+import javax.ws.rs.HEAD;
+import javax.ws.rs.container.DynamicFeature;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.FeatureContext;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Binds an AuthenticationFilter with the pre-resolved AccessRule of each
+ * resource method when the application starts, so requests do not need
+ * to inspect annotations. All filters share the UserStore, the cache of
+ * recently verified credentials and one RateLimiter for reads and one for
+ * writes.
+ */
+@Provider
+public class AuthenticationFeature implements DynamicFeature {
+
+    private final UserStore users;
+    private final BoundedCache<ByteBuffer, User> verified;
+    private final RateLimiter reads;
+    private final RateLimiter writes;
+
+    /**
+     * Uses the users of FileUserStore.fromSystemProperties(), caches up to
+     * `messaging.auth.cacheSize` verified credentials for
+     * `messaging.auth.cacheSeconds` and limits each user to the rates of
+     * `messaging.rateLimit.reads` and `messaging.rateLimit.writes`
+     */
+    public AuthenticationFeature() {
+        this(FileUserStore.fromSystemProperties(),
+                new BoundedCache<>(
+                        Integer.getInteger("messaging.auth.cacheSize", 10000),
+                        Long.getLong("messaging.auth.cacheSeconds", 300L), TimeUnit.SECONDS),
+                RateLimiter.fromSystemProperties("reads", 100, 200),
+                RateLimiter.fromSystemProperties("writes", 20, 50));
+    }
+
+    /**
+     * @param reads limits GET and HEAD requests of each user
+     * @param writes limits all other requests of each user
+     */
+    public AuthenticationFeature(UserStore users, BoundedCache<ByteBuffer, User> verified,
+                                 RateLimiter reads, RateLimiter writes) {
+        this.users = users;
+        this.verified = verified;
+        this.reads = reads;
+        this.writes = writes;
+    }
+
+    @Override
+    public void configure(ResourceInfo resourceInfo, FeatureContext context) {
+        Method method = resourceInfo.getResourceMethod();
+        AccessRule rule = AccessRule.of(method, resourceInfo.getResourceClass());
+        RateLimiter limiter = method.isAnnotationPresent(GET.class) || method.isAnnotationPresent(HEAD.class)
+                ? reads
+                : writes;
+        context.register(new AuthenticationFilter(rule, users, verified, limiter));
+    }
+}
@@ -1,41 +1,60 @@
 package messaging;
 
-import java.lang.reflect.Method;
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
-
-import javax.annotation.security.DenyAll;
-import javax.annotation.security.PermitAll;
-import javax.annotation.security.RolesAllowed;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Principal;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.NotAuthorizedException;
 import javax.ws.rs.container.ContainerRequestContext;
-import javax.ws.rs.container.ResourceInfo;
-import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
-import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
-import javax.ws.rs.ext.Provider;
+import javax.ws.rs.core.SecurityContext;
 
-import org.glassfish.jersey.internal.util.Base64;
-
-@Provider
+/**
+ * Authenticates requests to a single resource method, limits how often
+ * each user may call it and enforces its AccessRule. Bound to each method
+ * by AuthenticationFeature.
+ */
 public class AuthenticationFilter implements javax.ws.rs.container.ContainerRequestFilter {
 
-    @Context
-    private ResourceInfo resourceInfo;
-
     private static final String AUTH_SCHEME = "Basic";
+    // Not in Response.Status before JAX-RS 2.1
+    private static final int TOO_MANY_REQUESTS = 429;
+    // Looking up a MessageDigest is costly, and instances are not thread-safe
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    });
+
+    private final AccessRule rule;
+    private final UserStore users;
+    // Users authenticated recently, keyed by a digest of their Authorization
+    // header, so repeated requests skip decoding and hashing the password
+    private final BoundedCache<ByteBuffer, User> verified;
+    private final RateLimiter limiter;
+
+    public AuthenticationFilter(AccessRule rule, UserStore users, BoundedCache<ByteBuffer, User> verified,
+                                RateLimiter limiter) {
+        this.rule = rule;
+        this.users = users;
+        this.verified = verified;
+        this.limiter = limiter;
+    }
 
     @Override
     public void filter(ContainerRequestContext crc) {
 
-        Method method = resourceInfo.getResourceMethod();
-
         // Only check access if PermitAll is not present
-        if( ! method.isAnnotationPresent(PermitAll.class)) {
+        if( ! rule.isPermitAll()) {
 
-            if(method.isAnnotationPresent(DenyAll.class)) {
+            if(rule.isDenyAll()) {
                 crc.abortWith(Response
                         .status(Response.Status.FORBIDDEN)
                         .entity("Access to this resource is forbidden")
@@ -43,9 +62,9 @@ public class AuthenticationFilter implements javax.ws.rs.container.ContainerRequ
                 return;
             }
 
-            String[] usernameAndPassword = getUserAndPwFromContext(crc);
+            User user = authenticate(crc.getHeaderString(HttpHeaders.AUTHORIZATION));
 
-            if(usernameAndPassword == null) {
+            if(user == null) {
                 crc.abortWith(Response
                         .status(Response.Status.UNAUTHORIZED)
                         .entity("Access to this resource is denied")
@@ -53,63 +72,167 @@ public class AuthenticationFilter implements javax.ws.rs.container.ContainerRequ
                 return;
             }
 
-            final String username = usernameAndPassword[0];
-            final String password = usernameAndPassword[1];
+            long wait = limiter.acquire(user.getName());
 
-            if(method.isAnnotationPresent(RolesAllowed.class)) {
-                RolesAllowed rolesAnnotation = method.getAnnotation(RolesAllowed.class);
-                Set<String> rolesSet = new HashSet<>(Arrays.asList(rolesAnnotation.value()));
+            if(wait > 0) {
+                crc.abortWith(Response
+                        .status(TOO_MANY_REQUESTS)
+                        .header(HttpHeaders.RETRY_AFTER, TimeUnit.NANOSECONDS.toSeconds(wait - 1) + 1)
+                        .entity("Too many requests, please retry later")
+                        .build());
+                return;
+            }
 
-                if( ! isUserAllowed(username, password, rolesSet)) {
-                    crc.abortWith(Response
-                            .status(Response.Status.UNAUTHORIZED)
-                            .entity("Access to this resource is denied")
-                            .build());
-                    return;
-                }
+            if( ! rule.allows(user)) {
+                crc.abortWith(Response
+                        .status(Response.Status.UNAUTHORIZED)
+                        .entity("Access to this resource is denied")
+                        .build());
+                return;
             }
+
+            crc.setSecurityContext(new UserSecurityContext(user, crc.getSecurityContext().isSecure()));
         }
     }
 
-    private boolean isUserAllowed(final String username, final String password, final Set<String> rolesSet) {
+    /**
+     * Returns the user the Basic `authorization` header authenticates,
+     * or null if it does not
+     */
+    private User authenticate(String authorization) {
 
-        /*
-         * This method would be used to check if the supplied user has one of the roles part of the `rolesSet`
-         * against a user management service or a database or something like that.
-         *
-         * Now it only has some hardcoded values for testing purposes.
-         *
-         */
+        if(authorization == null) {
+            return null;
+        }
 
-        if((username.equals("linda") || username.equals("anna")) && password.equals("password")) {
+        ByteBuffer digest = digest(authorization);
+        User user = verified.get(digest);
 
-            String userRole = "USER";
+        if(user == null) {
+            String[] usernameAndPassword = decode(authorization);
 
-            if(rolesSet.contains(userRole)) {
-                return true;
+            if(usernameAndPassword == null) {
+                return null;
+            }
+
+            user = users.authenticate(usernameAndPassword[0], usernameAndPassword[1]);
+
+            if(user != null) {
+                verified.put(digest, user);
             }
         }
-        return false;
+
+        return user;
     }
 
-    public static String[] getUserAndPwFromContext(ContainerRequestContext crc) {
+    /**
+     * SHA-256 digest of `authorization`, so cached credentials are not kept
+     * in plain text. Headers are ASCII in practice and hashed without
+     * encoding them to a new array first.
+     */
+    private static ByteBuffer digest(String authorization) {
+
+        MessageDigest sha256 = SHA_256.get();
+        int length = authorization.length();
+        int i = 0;
 
-        final MultivaluedMap<String, String> headers = crc.getHeaders();
+        while(i < length && authorization.charAt(i) < 0x80) {
+            i++;
+        }
 
-        final List<String> auth = headers.get(HttpHeaders.AUTHORIZATION);
+        if(i == length) {
+            // Same bytes as UTF-8
+            for(i = 0; i < length; i++) {
+                sha256.update((byte) authorization.charAt(i));
+            }
+        } else {
+            sha256.update(authorization.getBytes(StandardCharsets.UTF_8));
+        }
 
-        if(auth == null || auth.isEmpty()) {
+        // Equal and hashed by content, as a cache key
+        return ByteBuffer.wrap(sha256.digest());
+    }
+
+    /**
+     * Returns the name of the user this filter authenticated for the
+     * request
+     *
+     * @throws NotAuthorizedException if no user was authenticated, which
+     *         resource methods answer with 401 Unauthorized
+     */
+    public static String getUser(SecurityContext securityContext) throws NotAuthorizedException {
+
+        Principal principal = securityContext == null ? null : securityContext.getUserPrincipal();
+
+        if(principal == null) {
+            throw new NotAuthorizedException(Response
+                    .status(Response.Status.UNAUTHORIZED)
+                    .entity("Access to this resource is denied")
+                    .build());
+        }
+
+        return principal.getName();
+    }
+
+    /**
+     * Returns the username and password of a Basic `authorization` header,
+     * or null if it is missing or malformed
+     */
+    private static String[] decode(String authorization) {
+
+        if(authorization == null
+                || ! authorization.regionMatches(true, 0, AUTH_SCHEME + " ", 0, AUTH_SCHEME.length() + 1)) {
+            return null;
+        }
+
+        String decoded;
+
+        try {
+            decoded = new String(Base64.getDecoder()
+                    .decode(authorization.substring(AUTH_SCHEME.length() + 1).trim()),
+                    StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        int colon = decoded.indexOf(':');
+
+        if(colon < 0) {
             return null;
         }
 
-        // Get encoded username and password
-        final String encodedPassword = auth.get(0).replaceFirst(AUTH_SCHEME + " ", "");
+        return new String[] {decoded.substring(0, colon), decoded.substring(colon + 1)};
+    }
+
+    private static class UserSecurityContext implements SecurityContext {
 
-        String[] usernameAndPassword = new String(Base64
-                .decode(encodedPassword.getBytes()))
-                .split(":", 2);
+        private final User user;
+        private final boolean secure;
 
-        return usernameAndPassword;
+        private UserSecurityContext(User user, boolean secure) {
+            this.user = user;
+            this.secure = secure;
+        }
+
+        @Override
+        public Principal getUserPrincipal() {
+            return user;
+        }
+
+        @Override
+        public boolean isUserInRole(String role) {
+            return user.hasRole(role);
+        }
+
+        @Override
+        public boolean isSecure() {
+            return secure;
+        }
+
+        @Override
+        public String getAuthenticationScheme() {
+            return BASIC_AUTH;
+        }
     }
 
 }
@@ -0,0 +1,107 @@
+package messaging;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Concurrent cache holding at most a fixed number of entries, optionally
+ * for a limited time. Reads never lock. Once full, adding an entry evicts
+ * an arbitrary other one, which is cheap and good enough when most lookups
+ * hit a small working set.
+ */
+public class BoundedCache<K, V> {
+
+    private final ConcurrentHashMap<K, Entry<V>> entries;
+    private final int capacity;
+    private final long ttlNanos;
+    private final AtomicInteger size = new AtomicInteger();
+
+    public BoundedCache(int capacity) {
+        this(capacity, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param ttl how long entries are kept after being added, 0 for as long
+     *            as there is room
+     */
+    public BoundedCache(int capacity, long ttl, TimeUnit unit) {
+        this.capacity = capacity;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.entries = new ConcurrentHashMap<>(Math.min(capacity, 1024));
+    }
+
+    /**
+     * Returns the value cached for `key`, or null if there is none
+     */
+    public V get(K key) {
+
+        Entry<V> entry = entries.get(key);
+
+        if(entry == null) {
+            return null;
+        }
+
+        if(ttlNanos > 0 && System.nanoTime() - entry.expiresAt > 0) {
+            if(entries.remove(key, entry)) {
+                size.decrementAndGet();
+            }
+            return null;
+        }
+
+        return entry.value;
+    }
+
+    public void put(K key, V value) {
+
+        if(capacity <= 0) {
+            return;
+        }
+
+        Entry<V> entry = new Entry<>(value, ttlNanos > 0 ? System.nanoTime() + ttlNanos : 0);
+
+        if(entries.put(key, entry) == null && size.incrementAndGet() > capacity) {
+            evictOtherThan(key);
+        }
+    }
+
+    public void remove(K key) {
+        if(entries.remove(key) != null) {
+            size.decrementAndGet();
+        }
+    }
+
+    public void clear() {
+        for(K key : entries.keySet()) {
+            remove(key);
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void evictOtherThan(K key) {
+
+        Iterator<K> keys = entries.keySet().iterator();
+
+        while(size.get() > capacity && keys.hasNext()) {
+            K candidate = keys.next();
+            if( ! candidate.equals(key)) {
+                remove(candidate);
+            }
+        }
+    }
+
+    private static final class Entry<V> {
+
+        private final V value;
+        private final long expiresAt;
+
+        private Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
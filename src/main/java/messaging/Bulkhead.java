@@ -0,0 +1,144 @@
+package messaging;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs one kind of request on its own bounded executor, so that a burst of
+ * one kind cannot take the threads the others need. At most `threads`
+ * requests run at once and `queue` more may wait; requests beyond that are
+ * answered right away with 503 Service Unavailable.
+ *
+ * Requests run on platform threads, or on virtual threads when
+ * `messaging.bulkhead.virtual` is set and the JDK has them. Virtual threads
+ * are still limited to `threads` running requests, since what is bounded
+ * is the work, not the threads.
+ */
+public class Bulkhead {
+
+    private final Semaphore admitted;
+    // Only used with virtual threads, which the executor does not bound
+    private final Semaphore running;
+    private final ExecutorService executor;
+
+    /**
+     * @param name names the threads of this Bulkhead
+     * @param threads maximum number of requests running at once
+     * @param queue maximum number of requests waiting to run
+     * @param virtual whether to use virtual threads if available
+     */
+    public Bulkhead(String name, int threads, int queue, boolean virtual) {
+
+        this.admitted = new Semaphore(threads + queue);
+
+        ExecutorService virtualThreads = virtual ? newVirtualThreadPerTaskExecutor() : null;
+
+        if(virtualThreads != null) {
+            this.running = new Semaphore(threads);
+            this.executor = virtualThreads;
+        } else {
+            this.running = null;
+            AtomicInteger count = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "bulkhead-" + name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Creates a Bulkhead configured by the `messaging.bulkhead.<name>.threads`,
+     * `messaging.bulkhead.<name>.queue` and `messaging.bulkhead.virtual`
+     * system properties
+     */
+    public static Bulkhead fromSystemProperties(String name, int threads, int queue) {
+        return new Bulkhead(name,
+                Integer.getInteger("messaging.bulkhead." + name + ".threads", threads),
+                Integer.getInteger("messaging.bulkhead." + name + ".queue", queue),
+                Boolean.getBoolean("messaging.bulkhead.virtual"));
+    }
+
+    /**
+     * Resumes `response` with the Response of `request`, run on this
+     * Bulkhead, or with 503 if it is full
+     */
+    public void submit(AsyncResponse response, Supplier<Response> request) {
+
+        if( ! admitted.tryAcquire()) {
+            response.resume(unavailable());
+            return;
+        }
+
+        try {
+            executor.execute(() -> run(response, request));
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+            admitted.release();
+            response.resume(unavailable());
+        }
+    }
+
+    private void run(AsyncResponse response, Supplier<Response> request) {
+
+        try {
+            if(running != null) {
+                running.acquireUninterruptibly();
+            }
+
+            try {
+                // Resuming also writes the response, which for listings is
+                // most of the work, so it is done before releasing
+                response.resume(request.get());
+            } catch (RuntimeException e) {
+                response.resume(e);
+            } finally {
+                if(running != null) {
+                    running.release();
+                }
+            }
+        } finally {
+            admitted.release();
+        }
+    }
+
+    /**
+     * Stops running requests, letting the ones already admitted finish
+     */
+    public void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * Waits until the requests already admitted have finished
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    private static Response unavailable() {
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, 1)
+                .entity("The server is busy, please retry later")
+                .build();
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor() if this JDK has it, or null
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
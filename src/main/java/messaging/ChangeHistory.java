@@ -0,0 +1,84 @@
+package messaging;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Ring buffer of the most recent changes of a MessageDao, in sequence
+ * order. Older changes are dropped as new ones are added.
+ */
+public class ChangeHistory {
+
+    // All fields are guarded by `this`
+    private final MessageChange[] changes;
+    private int start;
+    private int count;
+    private long lastSequence;
+
+    /**
+     * @param capacity number of most recent changes kept
+     */
+    public ChangeHistory(int capacity) {
+        this.changes = new MessageChange[capacity];
+    }
+
+    /**
+     * Adds `change`, whose sequence number must follow the last one
+     */
+    public synchronized void add(MessageChange change) {
+
+        lastSequence = change.getSequence();
+
+        if(changes.length == 0) {
+            return;
+        }
+
+        if(count == changes.length) {
+            changes[start] = null;
+            start = (start + 1) % changes.length;
+            count--;
+        }
+        changes[(start + count) % changes.length] = change;
+        count++;
+    }
+
+    /**
+     * Drops all changes and continues after `lastSequence`
+     */
+    public synchronized void reset(long lastSequence) {
+
+        for(int i = 0; i < count; i++) {
+            changes[(start + i) % changes.length] = null;
+        }
+        start = 0;
+        count = 0;
+        this.lastSequence = lastSequence;
+    }
+
+    /**
+     * Returns up to `limit` changes following the one with sequence number
+     * `sequence`, or null if some of them are no longer kept
+     */
+    public synchronized List<MessageChange> after(long sequence, int limit) {
+
+        long firstKept = lastSequence - count + 1;
+
+        if(sequence < firstKept - 1 || sequence > lastSequence) {
+            return null;
+        }
+
+        int from = (int) (sequence - firstKept + 1);
+        int to = (int) Math.min(count, (long) from + limit);
+
+        if(from >= to) {
+            return Collections.emptyList();
+        }
+
+        List<MessageChange> after = new ArrayList<>(to - from);
+        for(int i = from; i < to; i++) {
+            after.add(changes[(start + i) % changes.length]);
+        }
+        return after;
+    }
+}
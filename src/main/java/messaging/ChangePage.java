@@ -0,0 +1,72 @@
+package messaging;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Locale;
+
+public class ChangePage {
+
+    private final List<MessageChange> changes;
+    private final String next;
+
+    /**
+     * @param next cursor to continue after the last of `changes`
+     */
+    public ChangePage(List<MessageChange> changes, String next) {
+        this.changes = changes;
+        this.next = next;
+    }
+
+    public List<MessageChange> getChanges() {
+        return changes;
+    }
+
+    public String getNext() {
+        return next;
+    }
+
+    /**
+     * Writes the Json representation of this page to `generator`:
+     *
+     *     {"changes":[{"sequence":2,"operation":"add","id":1,"author":...,"content":...}],"next":...}
+     *
+     * leaving out the id of clears and the message of removals and clears
+     */
+    public void write(JsonGenerator generator) throws IOException {
+
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("changes");
+
+        for(MessageChange change : changes) {
+            generator.writeStartObject();
+            generator.writeNumberField("sequence", change.getSequence());
+            generator.writeStringField("operation", change.getOperation().name().toLowerCase(Locale.ROOT));
+            if(change.getId() != 0) {
+                generator.writeNumberField("id", change.getId());
+            }
+            if(change.getMessage() != null) {
+                generator.writeStringField("author", change.getMessage().getAuthor());
+                generator.writeStringField("content", change.getMessage().getContent());
+            }
+            generator.writeEndObject();
+        }
+
+        generator.writeEndArray();
+        generator.writeStringField("next", next);
+        generator.writeEndObject();
+    }
+
+    @Override
+    public String toString() {
+        StringWriter writer = new StringWriter();
+        try(JsonGenerator generator = MessageJsonWriter.JSON.createGenerator(writer)) {
+            write(generator);
+        } catch (IOException e) {
+            // StringWriter does not throw
+            throw new IllegalStateException(e);
+        }
+        return writer.toString();
+    }
+}
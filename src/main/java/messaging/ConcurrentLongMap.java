@@ -0,0 +1,269 @@
+package messaging;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Concurrent hash map from primitive long keys to objects, without boxing
+ * keys or allocating a node per entry.
+ *
+ * Keys are spread over a fixed number of segments. Each segment is an
+ * open-addressing table of parallel key and value arrays with linear
+ * probing, guarded by a StampedLock: writers lock their segment, readers
+ * read optimistically and only take the read lock if a write to the same
+ * segment happened meanwhile. Keys must not be 0, which marks empty slots.
+ */
+public class ConcurrentLongMap<V> {
+
+    private static final long EMPTY = 0;
+
+    private final Segment[] segments;
+    private final int segmentMask;
+
+    public ConcurrentLongMap() {
+        this(64, 16);
+    }
+
+    /**
+     * @param segments number of independently locked segments, rounded up
+     *                 to a power of two
+     * @param initialSegmentCapacity initial number of slots per segment
+     */
+    public ConcurrentLongMap(int segments, int initialSegmentCapacity) {
+
+        int count = Integer.highestOneBit(Math.max(1, segments * 2 - 1));
+        int capacity = Integer.highestOneBit(Math.max(4, initialSegmentCapacity * 2 - 1));
+
+        this.segments = new Segment[count];
+        this.segmentMask = count - 1;
+
+        for(int i = 0; i < count; i++) {
+            this.segments[i] = new Segment(capacity);
+        }
+    }
+
+    /**
+     * Returns the value for `key`, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        long hash = hash(key);
+        return (V) segment(hash).get(key, hash);
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Sets the value for `key`, returning the previous value or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+
+        if(key == EMPTY) {
+            throw new IllegalArgumentException("Key must not be 0");
+        }
+        if(value == null) {
+            throw new NullPointerException("Value must not be null");
+        }
+
+        long hash = hash(key);
+        return (V) segment(hash).put(key, hash, value);
+    }
+
+    /**
+     * Removes `key`, returning its value or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        long hash = hash(key);
+        return (V) segment(hash).remove(key, hash);
+    }
+
+    /**
+     * Number of entries, which may be stale while the map is being modified
+     */
+    public int size() {
+
+        int size = 0;
+        for(Segment segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    public void clear() {
+        for(Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    private Segment segment(long hash) {
+        // Segments are picked by the high bits, slots by the low bits
+        return segments[(int) (hash >>> 32) & segmentMask];
+    }
+
+    private static long hash(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return hash ^ (hash >>> 29);
+    }
+
+    private static final class Segment {
+
+        private final StampedLock lock = new StampedLock();
+        private long[] keys;
+        private Object[] values;
+        private int mask;
+        private volatile int size;
+
+        private Segment(int capacity) {
+            allocate(capacity);
+        }
+
+        private Object get(long key, long hash) {
+
+            long stamp = lock.tryOptimisticRead();
+
+            if(stamp != 0) {
+                try {
+                    Object value = find(key, hash);
+                    if(lock.validate(stamp)) {
+                        return value;
+                    }
+                } catch (RuntimeException e) {
+                    // Resized concurrently, retried below under the read lock
+                }
+            }
+
+            stamp = lock.readLock();
+            try {
+                return find(key, hash);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private Object find(long key, long hash) {
+
+            long[] keys = this.keys;
+            Object[] values = this.values;
+            int mask = this.mask;
+
+            for(int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+                long current = keys[slot];
+                if(current == key) {
+                    return values[slot];
+                }
+                if(current == EMPTY) {
+                    return null;
+                }
+            }
+        }
+
+        private Object put(long key, long hash, Object value) {
+
+            long stamp = lock.writeLock();
+            try {
+                for(int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+                    long current = keys[slot];
+                    if(current == key) {
+                        Object previous = values[slot];
+                        values[slot] = value;
+                        return previous;
+                    }
+                    if(current == EMPTY) {
+                        values[slot] = value;
+                        keys[slot] = key;
+                        size++;
+                        if(size > (mask + 1) / 4 * 3) {
+                            resize();
+                        }
+                        return null;
+                    }
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private Object remove(long key, long hash) {
+
+            long stamp = lock.writeLock();
+            try {
+                for(int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+                    long current = keys[slot];
+                    if(current == EMPTY) {
+                        return null;
+                    }
+                    if(current == key) {
+                        Object previous = values[slot];
+                        shiftBack(slot);
+                        size--;
+                        return previous;
+                    }
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private void clear() {
+
+            long stamp = lock.writeLock();
+            try {
+                Arrays.fill(keys, EMPTY);
+                Arrays.fill(values, null);
+                size = 0;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * Fills the hole at `hole` with later entries of the same probe run,
+         * so lookups never need tombstones
+         */
+        private void shiftBack(int hole) {
+
+            for(int slot = (hole + 1) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+                int home = (int) hash(keys[slot]) & mask;
+
+                // Move the entry if the hole lies between its home slot and its slot
+                if(((slot - home) & mask) >= ((slot - hole) & mask)) {
+                    keys[hole] = keys[slot];
+                    values[hole] = values[slot];
+                    hole = slot;
+                }
+            }
+
+            keys[hole] = EMPTY;
+            values[hole] = null;
+        }
+
+        private void resize() {
+
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            allocate(oldKeys.length * 2);
+
+            for(int i = 0; i < oldKeys.length; i++) {
+                long key = oldKeys[i];
+                if(key != EMPTY) {
+                    int slot = (int) hash(key) & mask;
+                    while(keys[slot] != EMPTY) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = key;
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+
+        private void allocate(int capacity) {
+            keys = new long[capacity];
+            values = new Object[capacity];
+            mask = capacity - 1;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package messaging;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Users read from a properties file of lines like
+ *
+ *     linda = pbkdf2-sha256:100000:<salt>:<hash>:USER
+ *
+ * where salt and hash are Base64 encoded and the last field lists the
+ * roles of the user, separated by commas. Lines can be made with
+ * `java messaging.FileUserStore <username> <password> <roles>`.
+ */
+public class FileUserStore implements UserStore {
+
+    private static final String ALGORITHM = "pbkdf2-sha256";
+    private static final int ITERATIONS = 100000;
+    private static final int SALT_LENGTH = 16;
+    private static final int HASH_LENGTH = 32;
+
+    private final Map<String, Credentials> users;
+    // Checked for unknown users, so they take as long to reject as known ones
+    private final Credentials unknown;
+
+    private FileUserStore(Map<String, Credentials> users) {
+        this.users = users;
+        this.unknown = Credentials.parse(hash("", ITERATIONS) + ":");
+    }
+
+    /**
+     * Loads the users of the file named by the `messaging.users.file`
+     * system property, or the bundled `users.properties` if it is not set
+     */
+    public static FileUserStore fromSystemProperties() {
+
+        String file = System.getProperty("messaging.users.file");
+
+        try {
+            if(file != null) {
+                return load(Paths.get(file));
+            }
+
+            try(InputStream input = FileUserStore.class.getResourceAsStream("/users.properties")) {
+                if(input == null) {
+                    throw new IOException("users.properties is missing");
+                }
+                return load(input);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not load users", e);
+        }
+    }
+
+    public static FileUserStore load(Path file) throws IOException {
+        try(InputStream input = Files.newInputStream(file)) {
+            return load(input);
+        }
+    }
+
+    public static FileUserStore load(InputStream input) throws IOException {
+
+        Properties properties = new Properties();
+        properties.load(input);
+
+        Map<String, Credentials> users = new HashMap<>();
+        for(String username : properties.stringPropertyNames()) {
+            try {
+                users.put(username, Credentials.parse(properties.getProperty(username)));
+            } catch (RuntimeException e) {
+                throw new IOException("Invalid credentials for user " + username, e);
+            }
+        }
+
+        return new FileUserStore(users);
+    }
+
+    @Override
+    public User authenticate(String username, String password) {
+
+        Credentials credentials = users.get(username);
+
+        if(credentials == null) {
+            unknown.matches(password);
+            return null;
+        }
+
+        return credentials.matches(password) ? new User(username, credentials.roles) : null;
+    }
+
+    /**
+     * Returns `password` hashed with a new random salt, in the format of
+     * the file without the roles
+     */
+    public static String hash(String password, int iterations) {
+
+        byte[] salt = new byte[SALT_LENGTH];
+        new SecureRandom().nextBytes(salt);
+
+        return ALGORITHM + ":" + iterations + ":" +
+                Base64.getEncoder().encodeToString(salt) + ":" +
+                Base64.getEncoder().encodeToString(pbkdf2(password, salt, iterations, HASH_LENGTH));
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations, int length) {
+
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, length * 8);
+
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("PBKDF2 is not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    public static void main(String[] args) {
+
+        if(args.length != 3) {
+            System.err.println("Usage: FileUserStore <username> <password> <roles>");
+            System.exit(1);
+        }
+
+        System.out.println(args[0] + " = " + hash(args[1], ITERATIONS) + ":" + args[2]);
+    }
+
+    private static class Credentials {
+
+        private final int iterations;
+        private final byte[] salt;
+        private final byte[] hash;
+        private final HashSet<String> roles;
+
+        private Credentials(int iterations, byte[] salt, byte[] hash, HashSet<String> roles) {
+            this.iterations = iterations;
+            this.salt = salt;
+            this.hash = hash;
+            this.roles = roles;
+        }
+
+        private static Credentials parse(String value) {
+
+            String[] fields = value.trim().split(":", -1);
+
+            if(fields.length != 5 || ! fields[0].equals(ALGORITHM)) {
+                throw new IllegalArgumentException("Expected " + ALGORITHM + ":iterations:salt:hash:roles");
+            }
+
+            HashSet<String> roles = new HashSet<>();
+            for(String role : fields[4].split(",")) {
+                if( ! role.trim().isEmpty()) {
+                    roles.add(role.trim());
+                }
+            }
+
+            return new Credentials(Integer.parseInt(fields[1]),
+                    Base64.getDecoder().decode(fields[2]),
+                    Base64.getDecoder().decode(fields[3]),
+                    roles);
+        }
+
+        private boolean matches(String password) {
+            byte[] candidate = pbkdf2(password, salt, iterations, hash.length);
+            // Constant time, so the comparison does not reveal how much matched
+            return MessageDigest.isEqual(candidate, hash);
+        }
+    }
+}
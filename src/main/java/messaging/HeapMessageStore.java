@@ -0,0 +1,35 @@
+package messaging;
+
+/**
+ * Keeps messages as objects on the Java heap. Reads return the stored
+ * instance itself, so its cached Json representation is reused.
+ */
+public class HeapMessageStore implements MessageStore {
+
+    private final ConcurrentLongMap<Message> messages = new ConcurrentLongMap<>();
+
+    @Override
+    public Message get(long id) {
+        return messages.get(id);
+    }
+
+    @Override
+    public boolean contains(long id) {
+        return messages.containsKey(id);
+    }
+
+    @Override
+    public void put(long id, Message message) {
+        messages.put(id, message);
+    }
+
+    @Override
+    public boolean remove(long id) {
+        return messages.remove(id) != null;
+    }
+
+    @Override
+    public void clear() {
+        messages.clear();
+    }
+}
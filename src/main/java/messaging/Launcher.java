@@ -0,0 +1,85 @@
+package messaging;
+
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.grizzly.http.server.NetworkListener;
+import org.glassfish.grizzly.nio.transport.TCPNIOTransport;
+import org.glassfish.grizzly.threadpool.ThreadPoolConfig;
+import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
+import org.glassfish.jersey.server.ResourceConfig;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the application on an embedded Grizzly server instead of a servlet
+ * container, serving the same URLs as the WAR:
+ *
+ *     java -cp <classpath> messaging.Launcher
+ *
+ * Configured by the system properties
+ *
+ * - `messaging.server.host` and `messaging.server.port`, default
+ *   0.0.0.0:8080
+ * - `messaging.server.selectors`, the threads accepting connections and
+ *   reading requests, default one per processor
+ * - `messaging.server.workers`, the threads running Jersey until requests
+ *   are handed to the MessageController bulkheads, default 2 per processor
+ */
+public class Launcher {
+
+    public static final String CONTEXT_PATH = "/messaging/";
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+
+        long start = System.nanoTime();
+
+        URI uri = URI.create("http://" + System.getProperty("messaging.server.host", "0.0.0.0") + ":" +
+                Integer.getInteger("messaging.server.port", 8080) + CONTEXT_PATH);
+        int processors = Runtime.getRuntime().availableProcessors();
+
+        HttpServer server = start(uri, new Application(),
+                Integer.getInteger("messaging.server.selectors", processors),
+                Integer.getInteger("messaging.server.workers", 2 * processors));
+
+        // Finishes the requests in progress and closes the MessageDao
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.shutdown(10, TimeUnit.SECONDS).get();
+            } catch (InterruptedException | ExecutionException e) {
+                server.shutdownNow();
+            }
+        }, "messaging-shutdown"));
+
+        System.out.println("Serving " + uri + " after " +
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+
+        // The server threads are daemons, so keep running until stopped
+        Thread.currentThread().join();
+    }
+
+    /**
+     * Starts serving `application` at `uri`
+     *
+     * @param selectors number of selector threads
+     * @param workers number of worker threads
+     */
+    public static HttpServer start(URI uri, ResourceConfig application, int selectors, int workers)
+            throws IOException {
+
+        HttpServer server = GrizzlyHttpServerFactory.createHttpServer(uri, application, false);
+
+        for(NetworkListener listener : server.getListeners()) {
+            TCPNIOTransport transport = listener.getTransport();
+            transport.setSelectorRunnersCount(selectors);
+            transport.setWorkerThreadPoolConfig(ThreadPoolConfig.defaultConfig()
+                    .setPoolName("messaging-worker")
+                    .setCorePoolSize(workers)
+                    .setMaxPoolSize(workers));
+        }
+
+        server.start();
+        return server;
+    }
+}
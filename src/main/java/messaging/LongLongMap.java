@@ -0,0 +1,157 @@
+package messaging;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from long to long, stored in two primitive
+ * arrays with linear probing. Key 0 marks empty slots, so it cannot be
+ * stored and is never found.
+ * Not thread-safe, callers guard it with their own lock.
+ */
+final class LongLongMap {
+
+    private static final long EMPTY = 0;
+
+    private long[] keys;
+    private long[] values;
+    private int mask;
+    private int size;
+
+    LongLongMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(8, expectedSize * 2 - 1)) << 1;
+        allocate(capacity);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the value for `key`, or `missing` if there is none
+     */
+    long get(long key, long missing) {
+
+        if(key == EMPTY) {
+            return missing;
+        }
+
+        long[] keys = this.keys;
+        int mask = this.mask;
+
+        for(int slot = slot(key, mask); ; slot = (slot + 1) & mask) {
+            long current = keys[slot];
+            if(current == key) {
+                return values[slot];
+            }
+            if(current == EMPTY) {
+                return missing;
+            }
+        }
+    }
+
+    /**
+     * Sets the value for `key`, returning the previous value or `missing`
+     */
+    long put(long key, long value, long missing) {
+
+        if(key == EMPTY) {
+            throw new IllegalArgumentException("Key must not be 0");
+        }
+
+        for(int slot = slot(key, mask); ; slot = (slot + 1) & mask) {
+            long current = keys[slot];
+            if(current == key) {
+                long previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            if(current == EMPTY) {
+                keys[slot] = key;
+                values[slot] = value;
+                if(++size > (mask + 1) / 4 * 3) {
+                    resize((mask + 1) * 2);
+                }
+                return missing;
+            }
+        }
+    }
+
+    /**
+     * Removes `key`, returning its value or `missing` if there was none
+     */
+    long remove(long key, long missing) {
+
+        if(key == EMPTY) {
+            return missing;
+        }
+
+        for(int slot = slot(key, mask); ; slot = (slot + 1) & mask) {
+            long current = keys[slot];
+            if(current == EMPTY) {
+                return missing;
+            }
+            if(current == key) {
+                long previous = values[slot];
+                shiftBack(slot);
+                size--;
+                return previous;
+            }
+        }
+    }
+
+    void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    /**
+     * Fills the hole at `hole` with later entries of the same probe run,
+     * so lookups never need tombstones
+     */
+    private void shiftBack(int hole) {
+
+        for(int slot = (hole + 1) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            int home = slot(keys[slot], mask);
+
+            // Move the entry if the hole lies between its home slot and its slot
+            if(((slot - home) & mask) >= ((slot - hole) & mask)) {
+                keys[hole] = keys[slot];
+                values[hole] = values[slot];
+                hole = slot;
+            }
+        }
+
+        keys[hole] = EMPTY;
+        values[hole] = 0;
+    }
+
+    private void resize(int capacity) {
+
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(capacity);
+
+        for(int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if(key != EMPTY) {
+                int slot = slot(key, mask);
+                while(keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    private static int slot(long key, int mask) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
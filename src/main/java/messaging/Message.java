@@ -1,15 +1,32 @@
 package messaging;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import org.json.JSONObject;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 
 public class Message {
 
-    private String content;
-    private String author;
+    private final String content;
+    private final String author;
+    // Lazily computed UTF-8 Json representation, see toJson()
+    private volatile byte[] json;
+    // Sequence number of the mutation that stored this message, see getVersion()
+    private final long version;
 
     public Message(String user, String content) {
+        this(user, content, 0);
+    }
+
+    /**
+     * Used by MessageDao to create the copy of a message it stores
+     */
+    Message(String user, String content, long version) {
         this.author = user;
         this.content = content;
+        this.version = version;
     }
 
     public String getAuthor() {
@@ -20,11 +37,83 @@ public class Message {
         return content;
     }
 
+    /**
+     * Returns the version of this message, which is unique among all
+     * messages stored by a MessageDao and changes whenever the message
+     * with an id is replaced, or 0 if it has not been stored yet
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Writes the Json representation of this message to `writer`
+     * without building an intermediate object tree
+     */
+    public void write(Writer writer) throws IOException {
+        writer.write("{\"author\":");
+        JSONObject.quote(this.author, writer);
+        writer.write(",\"content\":");
+        JSONObject.quote(this.content, writer);
+        writer.write('}');
+    }
+
+    /**
+     * Writes this message to `generator`, in Json or any other format
+     * Jackson supports
+     */
+    public void write(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("author", this.author);
+        generator.writeStringField("content", this.content);
+        generator.writeEndObject();
+    }
+
+    /**
+     * Returns the UTF-8 encoded Json representation of this message.
+     * Messages are immutable, so it is computed once and shared by every
+     * later read. Callers must not modify the returned array.
+     */
+    public byte[] toJson() {
+        byte[] bytes = json;
+        if(bytes == null) {
+            bytes = toString().getBytes(StandardCharsets.UTF_8);
+            json = bytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * Messages are equal when they have the same author and content, so
+     * the versioned copy a MessageDao stores equals the message it was
+     * given
+     */
+    @Override
+    public boolean equals(Object other) {
+        if(this == other) {
+            return true;
+        }
+        if( ! (other instanceof Message)) {
+            return false;
+        }
+        Message message = (Message) other;
+        return author.equals(message.author) && content.equals(message.content);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * author.hashCode() + content.hashCode();
+    }
+
     @Override
     public String toString() {
-        JSONObject object = new JSONObject();
-        object.put("author", this.author);
-        object.put("content", this.content);
-        return object.toString();
+        StringWriter writer = new StringWriter();
+        try {
+            write(writer);
+        } catch (IOException e) {
+            // StringWriter does not throw
+            throw new IllegalStateException(e);
+        }
+        return writer.toString();
     }
 }
@@ -0,0 +1,121 @@
+package messaging;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes Messages and the pages of messages and changes as CBOR, a binary
+ * encoding of the same structure as their Json, which is smaller and
+ * cheaper to parse for clients that do not need text. Also reads the CBOR
+ * request bodies MessageController accepts.
+ */
+@Provider
+@Produces(MessageCborWriter.APPLICATION_CBOR)
+public class MessageCborWriter implements MessageBodyWriter<Object> {
+
+    public static final String APPLICATION_CBOR = "application/cbor";
+    public static final MediaType APPLICATION_CBOR_TYPE = MediaType.valueOf(APPLICATION_CBOR);
+
+    // Thread-safe once configured, and shared since creating one is costly
+    static final CBORFactory CBOR = new CBORFactory();
+
+    static {
+        CBOR.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return (type == Message.class || type == MessagePage.class
+                || type == SearchResults.class || type == ChangePage.class)
+                && APPLICATION_CBOR_TYPE.isCompatible(mediaType);
+    }
+
+    @Override
+    public long getSize(Object entity, Class<?> type, Type genericType, Annotation[] annotations,
+                        MediaType mediaType) {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(Object entity, Class<?> type, Type genericType, Annotation[] annotations,
+                        MediaType mediaType, MultivaluedMap<String, Object> httpHeaders,
+                        OutputStream entityStream) throws IOException, WebApplicationException {
+
+        try(JsonGenerator generator = CBOR.createGenerator(entityStream)) {
+            if(entity instanceof Message) {
+                ((Message) entity).write(generator);
+            } else if(entity instanceof MessagePage) {
+                ((MessagePage) entity).write(generator);
+            } else if(entity instanceof SearchResults) {
+                ((SearchResults) entity).write(generator);
+            } else {
+                ((ChangePage) entity).write(generator);
+            }
+        }
+    }
+
+    /**
+     * Returns the text string `body` encodes, or null if it is not a single
+     * text string
+     */
+    public static String readString(byte[] body) {
+
+        try(JsonParser parser = CBOR.createParser(body)) {
+            if(parser.nextToken() != JsonToken.VALUE_STRING) {
+                return null;
+            }
+            String value = parser.getText();
+            return parser.nextToken() == null ? value : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the items of the array `body` encodes, with text strings as
+     * Strings and anything else as their CBOR token, or null if it is not
+     * a single array
+     */
+    public static List<Object> readArray(byte[] body) {
+
+        try(JsonParser parser = CBOR.createParser(body)) {
+            if(parser.nextToken() != JsonToken.START_ARRAY) {
+                return null;
+            }
+
+            List<Object> items = new ArrayList<>();
+            JsonToken token;
+
+            while((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if(token == null) {
+                    return null;
+                }
+                if(token == JsonToken.VALUE_STRING) {
+                    items.add(parser.getText());
+                } else {
+                    items.add(token);
+                    parser.skipChildren();
+                }
+            }
+
+            return parser.nextToken() == null ? items : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package messaging;
+
+/**
+ * A single add, update, remove or clear applied by a MessageDao
+ */
+public class MessageChange {
+
+    private final MessageLog.Operation operation;
+    private final long sequence;
+    private final long id;
+    private final Message message;
+
+    MessageChange(MessageLog.Operation operation, long sequence, long id, Message message) {
+        this.operation = operation;
+        this.sequence = sequence;
+        this.id = id;
+        this.message = message;
+    }
+
+    public MessageLog.Operation getOperation() {
+        return operation;
+    }
+
+    /**
+     * Sequence number of the change, one higher than that of the change
+     * before it
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Id of the changed message, 0 for clear
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * The message stored by an add or update, null for remove and clear
+     */
+    public Message getMessage() {
+        return message;
+    }
+}
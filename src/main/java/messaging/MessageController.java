@@ -1,61 +1,340 @@
 package messaging;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.glassfish.jersey.media.sse.SseFeature;
+import org.json.JSONArray;
+import org.json.JSONException;
+
 import javax.annotation.security.RolesAllowed;
 import javax.ws.rs.*;
-import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.SecurityContext;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
 import java.net.URISyntaxException;
 import java.net.URI;
-import java.util.NoSuchElementException;
+import java.util.ArrayList;
+import java.util.List;
 
 
 @Path("/message")
 public class MessageController {
 
-    public static final MessageDao messageDao = new MessageDao();
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int DEFAULT_SEARCH_RESULTS = 10;
+    private static final int MAX_SEARCH_RESULTS = 100;
+    // A small fraction of MessageDao.DEFAULT_CHANGE_RETENTION, so one bulk
+    // request cannot push every change subscribers still need out of the
+    // change history, and short enough a pause for the other writers
+    private static final int MAX_BULK_SIZE = 1000;
+    private static final String CBOR_TAG_SUFFIX = "+cbor";
+
+    private final MessageDao messageDao;
+    private final MessageEvents messageEvents;
+
+    // Listings and searches, point reads and writes each have their own
+    // threads, so heavy listings cannot hold up the rest of the API
+    private final Bulkhead bulkReads;
+    private final Bulkhead pointReads;
+    private final Bulkhead writes;
+
+    /**
+     * Serves the messages of `messageDao`, which Application owns along
+     * with the other arguments and closes on shutdown
+     */
+    public MessageController(MessageDao messageDao, MessageEvents messageEvents,
+                             Bulkhead bulkReads, Bulkhead pointReads, Bulkhead writes) {
+        this.messageDao = messageDao;
+        this.messageEvents = messageEvents;
+        this.bulkReads = bulkReads;
+        this.pointReads = pointReads;
+        this.writes = writes;
+    }
 
     @GET
     @RolesAllowed("USER")
-    @Produces(MediaType.APPLICATION_JSON)
-    public Response getMessages() {
+    @Produces({MediaType.APPLICATION_JSON, MessageCborWriter.APPLICATION_CBOR})
+    public void getMessages(@Suspended AsyncResponse response,
+                            @Context Request request,
+                            @Context HttpHeaders headers,
+                            @QueryParam("ids") String ids,
+                            @QueryParam("author") String author,
+                            @QueryParam("limit") Integer limit,
+                            @QueryParam("after") Long after,
+                            @QueryParam("before") Long before) {
+        MediaType type = responseType(headers);
+        bulkReads.submit(response, () -> getMessages(request, type, ids, author, limit, after, before));
+    }
+
+    private Response getMessages(Request request, MediaType type, String ids, String author,
+                                 Integer limit, Long after, Long before) {
+
+        // Invalid requests fail the same whatever their preconditions
+        long[] requested = null;
+
+        if(ids != null) {
+            if(author != null || limit != null || after != null || before != null) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity("Please do not combine ids with other parameters")
+                        .build();
+            }
+
+            requested = parseIds(ids);
+
+            if(requested == null) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity("Please provide comma separated message ids")
+                        .build();
+            }
+            if(requested.length > MAX_PAGE_SIZE) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity("Please provide at most " + MAX_PAGE_SIZE + " ids")
+                        .build();
+            }
+        }
+
+        if(limit != null && (limit < 1 || limit > MAX_PAGE_SIZE)) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("Please provide a limit between" +
+                            " 1 and " + MAX_PAGE_SIZE)
+                    .build();
+        }
+
+        // Any change to any message changes the version, so it is taken
+        // before reading messages and only compared, never serialized
+        EntityTag tag = entityTag(messageDao.getVersion(), type);
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(tag);
+
+        if(notModified != null) {
+            return notModified.header(HttpHeaders.VARY, HttpHeaders.ACCEPT).build();
+        }
+
+        if(requested != null) {
+            return getMessagesByIds(requested, type, tag);
+        }
+
+        // Without any paging or filter parameters, keep returning every message
+        if(author == null && limit == null && after == null && before == null) {
+
+            StreamingOutput map = isCbor(type)
+                    ? output -> {
+                        try(JsonGenerator generator = MessageCborWriter.CBOR.createGenerator(output)) {
+                            messageDao.writeAllMessages(generator);
+                        }
+                    }
+                    : output -> {
+                        OutputStream buffered = new BufferedOutputStream(output);
+                        messageDao.writeAllMessages(buffered);
+                        buffered.flush();
+                    };
+
+            return ok(map, type, tag);
+        }
+
+        MessagePage page = messageDao.getPage(author, after, before,
+                limit == null ? DEFAULT_PAGE_SIZE : limit);
+
+        return ok(page, type, tag);
+    }
+
+
+    /**
+     * Returns the message ids in the comma separated `ids`, in their order,
+     * or null if they are not all numbers
+     */
+    private static long[] parseIds(String ids) {
 
-        String map = messageDao.getAllMessages();
+        String[] parts = ids.split(",");
+        long[] requested = new long[parts.length];
 
-        return Response.status(Response.Status.OK).entity(map).build();
+        try {
+            for(int i = 0; i < parts.length; i++) {
+                requested[i] = Long.parseLong(parts[i].trim());
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return requested;
+    }
+
+    /**
+     * Returns the messages with the `requested` ids in the same order, with
+     * null for each id that was not found instead of failing
+     */
+    private Response getMessagesByIds(long[] requested, MediaType type, EntityTag tag) {
+
+        StreamingOutput map = isCbor(type)
+                ? output -> {
+                    try(JsonGenerator generator = MessageCborWriter.CBOR.createGenerator(output)) {
+                        messageDao.writeMessages(requested, generator);
+                    }
+                }
+                : output -> {
+                    OutputStream buffered = new BufferedOutputStream(output);
+                    messageDao.writeMessages(requested, buffered);
+                    buffered.flush();
+                };
+
+        return ok(map, type, tag);
     }
 
 
     @GET
-    @Path("/{id}")
+    @Path("/search")
     @RolesAllowed("USER")
-    @Produces(MediaType.APPLICATION_JSON)
-    public Response getMessageById(@PathParam("id") long id) {
+    @Produces({MediaType.APPLICATION_JSON, MessageCborWriter.APPLICATION_CBOR})
+    public void searchMessages(@Suspended AsyncResponse response,
+                               @Context HttpHeaders headers,
+                               @QueryParam("q") String query,
+                               @QueryParam("limit") Integer limit) {
+        MediaType type = responseType(headers);
+        bulkReads.submit(response, () -> searchMessages(type, query, limit));
+    }
 
-        Message message;
+    private Response searchMessages(MediaType type, String query, Integer limit) {
 
-        try {
-            message = messageDao.get(id);
+        if(query == null || query.trim().isEmpty()) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("Please provide a search query")
+                    .build();
+        }
 
-        } catch (NoSuchElementException e) {
+        if(limit != null && (limit < 1 || limit > MAX_SEARCH_RESULTS)) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("Please provide a limit between" +
+                            " 1 and " + MAX_SEARCH_RESULTS)
+                    .build();
+        }
+
+        SearchResults results = messageDao.search(query,
+                limit == null ? DEFAULT_SEARCH_RESULTS : limit);
+
+        return ok(results, type, null);
+    }
+
+
+    @GET
+    @Path("/changes")
+    @RolesAllowed("USER")
+    @Produces({MediaType.APPLICATION_JSON, MessageCborWriter.APPLICATION_CBOR})
+    public void getChanges(@Suspended AsyncResponse response,
+                           @Context HttpHeaders headers,
+                           @QueryParam("since") String since,
+                           @QueryParam("limit") Integer limit) {
+        MediaType type = responseType(headers);
+        bulkReads.submit(response, () -> getChanges(type, since, limit));
+    }
 
+    private Response getChanges(MediaType type, String since, Integer limit) {
+
+        if(since == null) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("Please provide a since cursor")
+                    .build();
+        }
+
+        if(limit != null && (limit < 1 || limit > MAX_PAGE_SIZE)) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("Please provide a limit between" +
+                            " 1 and " + MAX_PAGE_SIZE)
+                    .build();
+        }
+
+        long sequence = messageDao.sequence(since);
+        List<MessageChange> changes = messageDao.getChanges(sequence,
+                limit == null ? DEFAULT_PAGE_SIZE : limit);
+
+        if(changes == null) {
+            return Response.status(Response.Status.GONE)
+                    .entity("Changes since " + since + " are no longer available," +
+                            " please reload all messages")
+                    .build();
+        }
+
+        if( ! changes.isEmpty()) {
+            sequence = changes.get(changes.size() - 1).getSequence();
+        }
+
+        ChangePage page = new ChangePage(changes, messageDao.cursor(sequence));
+
+        return ok(page, type, null);
+    }
+
+
+    @GET
+    @Path("/events")
+    @RolesAllowed("USER")
+    @Produces(SseFeature.SERVER_SENT_EVENTS)
+    public EventOutput streamMessages(@HeaderParam(SseFeature.LAST_EVENT_ID_HEADER) String lastEventId) {
+        return messageEvents.subscribe(lastEventId);
+    }
+
+
+    @GET
+    @Path("/{id}")
+    @RolesAllowed("USER")
+    @Produces({MediaType.APPLICATION_JSON, MessageCborWriter.APPLICATION_CBOR})
+    public void getMessageById(@Suspended AsyncResponse response,
+                               @Context Request request,
+                               @Context HttpHeaders headers,
+                               @PathParam("id") long id) {
+        MediaType type = responseType(headers);
+        pointReads.submit(response, () -> getMessageById(request, type, id));
+    }
+
+    private Response getMessageById(Request request, MediaType type, long id) {
+
+        Message message = messageDao.find(id);
+
+        if(message == null) {
             return  Response.status(Response.Status.NOT_FOUND)
                     .entity("Could not find a message with id=" + id)
                     .build();
         }
 
-        return Response.status(Response.Status.OK).entity(message).build();
+        EntityTag tag = entityTag(message.getVersion(), type);
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(tag);
+
+        if(notModified != null) {
+            return notModified.header(HttpHeaders.VARY, HttpHeaders.ACCEPT).build();
+        }
+
+        return ok(message, type, tag);
     }
 
 
     @POST
     @RolesAllowed("USER")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response addMessage(@Context ContainerRequestContext crc,
-                               String content) {
+    public void addMessage(@Suspended AsyncResponse response,
+                           @Context SecurityContext securityContext,
+                           String content) {
+        String user = AuthenticationFilter.getUser(securityContext);
+        writes.submit(response, () -> addMessage(user, content));
+    }
+
+    @POST
+    @RolesAllowed("USER")
+    @Consumes(MessageCborWriter.APPLICATION_CBOR)
+    @Produces(MediaType.APPLICATION_JSON)
+    public void addCborMessage(@Suspended AsyncResponse response,
+                               @Context SecurityContext securityContext,
+                               byte[] body) {
+        String user = AuthenticationFilter.getUser(securityContext);
+        writes.submit(response, () -> addMessage(user, MessageCborWriter.readString(body)));
+    }
 
-        String user = AuthenticationFilter.getUserAndPwFromContext(crc)[0];
+    private Response addMessage(String user, String content) {
 
         if(content == null || content.length() == 0 || content.length() > 500) {
             return Response.status(Response.Status.BAD_REQUEST)
@@ -81,51 +360,167 @@ public class MessageController {
     }
 
 
-    @PUT
-    @Path("/{id}")
+    @POST
+    @Path("/bulk")
     @RolesAllowed("USER")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response editMessage(@Context ContainerRequestContext crc,
-                                  @PathParam("id") long id,
-                                  String content) {
+    public void addMessages(@Suspended AsyncResponse response,
+                            @Context SecurityContext securityContext,
+                            String body) {
+        String user = AuthenticationFilter.getUser(securityContext);
+        writes.submit(response, () -> addMessages(user, body));
+    }
 
-        String user = AuthenticationFilter.getUserAndPwFromContext(crc)[0];
+    @POST
+    @Path("/bulk")
+    @RolesAllowed("USER")
+    @Consumes(MessageCborWriter.APPLICATION_CBOR)
+    @Produces(MediaType.APPLICATION_JSON)
+    public void addCborMessages(@Suspended AsyncResponse response,
+                                @Context SecurityContext securityContext,
+                                byte[] body) {
+        String user = AuthenticationFilter.getUser(securityContext);
+        writes.submit(response, () -> addCborMessages(user, body));
+    }
 
-        if(content == null || content.length() == 0 || content.length() > 500) {
+    private Response addMessages(String user, String body) {
+
+        List<Object> contents;
+
+        try {
+            contents = new JSONArray(body == null ? "" : body).toList();
+        } catch (JSONException e) {
             return Response.status(Response.Status.BAD_REQUEST)
-                    .entity("Please provide message content between" +
-                            " 1 and 500 characters in length")
+                    .entity("Please provide a JSON array of message contents")
                     .build();
         }
 
-        Message message;
+        return addMessages(user, contents);
+    }
 
-        try {
-            message = messageDao.get(id);
-        } catch(NoSuchElementException e) {
-            return Response.status(Response.Status.NOT_FOUND)
-                    .entity("Could not find a message with id=" + id)
+    private Response addCborMessages(String user, byte[] body) {
+
+        List<Object> contents = MessageCborWriter.readArray(body);
+
+        if(contents == null) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("Please provide a CBOR array of message contents")
                     .build();
         }
 
-        if( ! message.getAuthor().equals(user)) {
-            return Response.status(Response.Status.FORBIDDEN)
-                    .entity("Only user=" + message.getAuthor() +
-                            " is allowed to edit this message")
+        return addMessages(user, contents);
+    }
+
+    private Response addMessages(String user, List<Object> contents) {
+
+        if(contents.size() == 0 || contents.size() > MAX_BULK_SIZE) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("Please provide between 1 and " +
+                            MAX_BULK_SIZE + " messages")
                     .build();
         }
 
-        message = new Message(user, content);
+        List<Message> messages = new ArrayList<>(contents.size());
 
-        try {
-            messageDao.update(id, message);
-        } catch (NoSuchElementException e) {
-            return  Response.status(Response.Status.NOT_FOUND)
-                    .entity("Could not find a message with id=" + id)
+        // Validate everything first so that either all or none are added
+        for(int i = 0; i < contents.size(); i++) {
+            Object content = contents.get(i);
+
+            if( ! (content instanceof String) || ((String) content).length() == 0
+                    || ((String) content).length() > 500) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity("Please provide message content between" +
+                                " 1 and 500 characters in length (index " + i + ")")
+                        .build();
+            }
+
+            messages.add(new Message(user, (String) content));
+        }
+
+        long first = messageDao.addAll(messages);
+
+        StringBuilder ids = new StringBuilder("{\"ids\":[");
+        for(int i = 0; i < messages.size(); i++) {
+            if(i > 0) {
+                ids.append(',');
+            }
+            ids.append(first + i);
+        }
+        ids.append("]}");
+
+        return Response.status(Response.Status.CREATED).entity(ids.toString()).build();
+    }
+
+
+    @PUT
+    @Path("/{id}")
+    @RolesAllowed("USER")
+    @Produces({MediaType.APPLICATION_JSON, MessageCborWriter.APPLICATION_CBOR})
+    public void editMessage(@Suspended AsyncResponse response,
+                            @Context SecurityContext securityContext,
+                            @Context HttpHeaders headers,
+                            @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch,
+                            @PathParam("id") long id,
+                            String content) {
+        String user = AuthenticationFilter.getUser(securityContext);
+        MediaType type = responseType(headers);
+        writes.submit(response, () -> editMessage(user, type, ifMatch, id, content));
+    }
+
+    @PUT
+    @Path("/{id}")
+    @RolesAllowed("USER")
+    @Consumes(MessageCborWriter.APPLICATION_CBOR)
+    @Produces({MediaType.APPLICATION_JSON, MessageCborWriter.APPLICATION_CBOR})
+    public void editCborMessage(@Suspended AsyncResponse response,
+                                @Context SecurityContext securityContext,
+                                @Context HttpHeaders headers,
+                                @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch,
+                                @PathParam("id") long id,
+                                byte[] body) {
+        String user = AuthenticationFilter.getUser(securityContext);
+        MediaType type = responseType(headers);
+        writes.submit(response, () -> editMessage(user, type, ifMatch, id, MessageCborWriter.readString(body)));
+    }
+
+    private Response editMessage(String user, MediaType type, String ifMatch, long id, String content) {
+
+        if(content == null || content.length() == 0 || content.length() > 500) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("Please provide message content between" +
+                            " 1 and 500 characters in length")
                     .build();
         }
 
-        return Response.ok().entity(message).build();
+        Long expectedVersion = expectedVersion(ifMatch);
+
+        if(expectedVersion == null) {
+            return preconditionFailed(id);
+        }
+
+        Message message = new Message(user, content);
+        WriteResult result = messageDao.compareAndReplace(id, message, expectedVersion);
+
+        switch (result.getStatus()) {
+            case NOT_FOUND:
+                // No current version for If-Match to match (RFC 7232 3.1)
+                if(ifMatch != null) {
+                    return preconditionFailed(id);
+                }
+                return Response.status(Response.Status.NOT_FOUND)
+                        .entity("Could not find a message with id=" + id)
+                        .build();
+            case FORBIDDEN:
+                return Response.status(Response.Status.FORBIDDEN)
+                        .entity("Only user=" + result.getMessage().getAuthor() +
+                                " is allowed to edit this message")
+                        .build();
+            case CONFLICT:
+                return preconditionFailed(id);
+            default:
+                Message stored = result.getMessage();
+                return ok(stored, type, entityTag(stored.getVersion(), type));
+        }
     }
 
 
@@ -133,39 +528,122 @@ public class MessageController {
     @Path("/{id}")
     @RolesAllowed("USER")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response deleteMessage(@Context ContainerRequestContext crc,
-                                  @PathParam("id") long id) {
+    public void deleteMessage(@Suspended AsyncResponse response,
+                              @Context SecurityContext securityContext,
+                              @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch,
+                              @PathParam("id") long id) {
+        String user = AuthenticationFilter.getUser(securityContext);
+        writes.submit(response, () -> deleteMessage(user, ifMatch, id));
+    }
 
-        String user = AuthenticationFilter.getUserAndPwFromContext(crc)[0];
+    private Response deleteMessage(String user, String ifMatch, long id) {
 
-        Message message = null;
+        Long expectedVersion = expectedVersion(ifMatch);
 
-        try {
-            message = messageDao.get(id);
-        } catch(NoSuchElementException e) {
-            return  Response.status(Response.Status.NOT_FOUND)
-                    .entity("Could not find a message with id=" + id)
-                    .build();
+        if(expectedVersion == null) {
+            return preconditionFailed(id);
         }
 
-        if( ! message.getAuthor().equals(user)) {
-            return  Response.status(Response.Status.FORBIDDEN)
-                    .entity("Only user=" + message.getAuthor() +
-                            " is allowed to delete this message")
-                    .build();
+        WriteResult result = messageDao.compareAndRemove(id, user, expectedVersion);
+
+        switch (result.getStatus()) {
+            case NOT_FOUND:
+                // No current version for If-Match to match (RFC 7232 3.1)
+                if(ifMatch != null) {
+                    return preconditionFailed(id);
+                }
+                return Response.status(Response.Status.NOT_FOUND)
+                        .entity("Could not find a message with id=" + id)
+                        .build();
+            case FORBIDDEN:
+                return Response.status(Response.Status.FORBIDDEN)
+                        .entity("Only user=" + result.getMessage().getAuthor() +
+                                " is allowed to delete this message")
+                        .build();
+            case CONFLICT:
+                return preconditionFailed(id);
+            default:
+                return Response.status(202)
+                        .entity("Message deleted successfully")
+                        .build();
         }
+    }
 
-        try {
-            messageDao.remove(id);
-        } catch (NoSuchElementException e) {
-            return  Response.status(Response.Status.NOT_FOUND)
-                    .entity("Could not find a message with id=" + id)
-                    .build();
+
+    /**
+     * Returns the message version an If-Match header requires, ANY_VERSION
+     * when there is no such header or it is `*`, and null when it names no
+     * version of this MessageDao so it can never match
+     */
+    private Long expectedVersion(String ifMatch) {
+
+        if(ifMatch == null || ifMatch.trim().equals("*")) {
+            return MessageDao.ANY_VERSION;
+        }
+
+        String tag = ifMatch.trim();
+
+        if(tag.length() < 2 || ! tag.startsWith("\"") || ! tag.endsWith("\"")) {
+            return null;
         }
 
-        return Response.status(202)
-                .entity("Message deleted successfully")
+        String cursor = tag.substring(1, tag.length() - 1);
+
+        // Tags of CBOR representations name the same versions
+        if(cursor.endsWith(CBOR_TAG_SUFFIX)) {
+            cursor = cursor.substring(0, cursor.length() - CBOR_TAG_SUFFIX.length());
+        }
+
+        long version = messageDao.sequence(cursor);
+        return version <= MessageDao.ANY_VERSION ? null : version;
+    }
+
+    private static Response preconditionFailed(long id) {
+        return Response.status(Response.Status.PRECONDITION_FAILED)
+                .entity("Message with id=" + id + " has been modified")
                 .build();
     }
 
+    /**
+     * Returns the media type to respond with, the first acceptable one of
+     * Json and CBOR in order of preference. Jersey has already answered 406
+     * if neither is acceptable.
+     */
+    private static MediaType responseType(HttpHeaders headers) {
+
+        for(MediaType accepted : headers.getAcceptableMediaTypes()) {
+            if(accepted.isCompatible(MediaType.APPLICATION_JSON_TYPE)) {
+                return MediaType.APPLICATION_JSON_TYPE;
+            }
+            if(accepted.isCompatible(MessageCborWriter.APPLICATION_CBOR_TYPE)) {
+                return MessageCborWriter.APPLICATION_CBOR_TYPE;
+            }
+        }
+
+        return MediaType.APPLICATION_JSON_TYPE;
+    }
+
+    private static boolean isCbor(MediaType type) {
+        return type.isCompatible(MessageCborWriter.APPLICATION_CBOR_TYPE);
+    }
+
+    /**
+     * 200 response with `entity` as `type`, which depends on the Accept
+     * header, and tagged with `tag` unless it is null
+     */
+    private static Response ok(Object entity, MediaType type, EntityTag tag) {
+        return Response.ok(entity, type)
+                .tag(tag)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                .build();
+    }
+
+    /**
+     * Strong entity tag for a message or listing at `version` in `type`,
+     * which differs between media types as their bytes differ
+     */
+    private EntityTag entityTag(long version, MediaType type) {
+        return new EntityTag(messageDao.cursor(version) + (isCbor(type) ? CBOR_TAG_SUFFIX : ""));
+    }
+
 }
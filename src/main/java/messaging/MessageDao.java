@@ -1,66 +1,983 @@
 package messaging;
 
-import org.json.JSONObject;
-import java.util.concurrent.ConcurrentMap;
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.NoSuchElementException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class MessageDao implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(MessageDao.class.getName());
+    private static final String SNAPSHOT_FILE = "messages.snapshot";
+    private static final Pattern LOG_FILE = Pattern.compile("messages\\.(\\d+)\\.log");
 
-public class MessageDao {
+    /**
+     * Expected version that matches any existing message
+     */
+    public static final long ANY_VERSION = 0;
 
-    private final ConcurrentMap<Long, Message> messages;
+    /**
+     * Number of recent changes kept for getChanges unless configured
+     */
+    public static final int DEFAULT_CHANGE_RETENTION = 10000;
+
+    private final MessageStore messages;
+    // Ordered view of the ids in `messages`, used for paging
+    private final ConcurrentSkipListSet<Long> ids;
+    // Ordered ids of the messages of each author
+    private final ConcurrentMap<String, ConcurrentSkipListSet<Long>> authorIds;
+    private final SearchIndex searchIndex = new SearchIndex();
     private final AtomicLong counter = new AtomicLong();
+    private final List<MessageListener> listeners = new CopyOnWriteArrayList<>();
+    private final ChangeHistory changes;
+
+    // Mutations are serialized so the log sees them in the order they were applied
+    private final Object writeLock = new Object();
+    // Sequence number of the latest mutation, guarded by writeLock
+    private long sequence;
+    // Sequence number of the latest mutation visible to readers, see getVersion()
+    private volatile long version;
+    // Distinguishes in-memory instances, whose sequence numbers restart at 0
+    private long epoch;
+    private boolean closed;
+
+    // Persistence settings, dataDir is null when messages are only kept in memory
+    private Path dataDir;
+    private int maxBatchSize;
+    private long maxDelayMicros;
+    // Generation of the current log file, guarded by writeLock
+    private long generation;
+    private MessageLog log;
+    private MessageLog.ChannelOpener opener;
+    private final Object snapshotLock = new Object();
+    private ScheduledExecutorService snapshotScheduler;
 
     public MessageDao() {
-        this.messages = new ConcurrentHashMap<>();
+        this(new HeapMessageStore());
+    }
+
+    public MessageDao(MessageStore store) {
+        this(store, DEFAULT_CHANGE_RETENTION);
+    }
+
+    /**
+     * @param changeRetention number of recent changes kept for getChanges
+     */
+    public MessageDao(MessageStore store, int changeRetention) {
+        this.messages = store;
+        this.ids = new ConcurrentSkipListSet<>();
+        this.authorIds = new ConcurrentHashMap<>();
+        this.changes = new ChangeHistory(changeRetention);
+        this.epoch = System.currentTimeMillis();
+    }
+
+    /**
+     * Creates a MessageDao that makes every mutation durable in a
+     * write-ahead log in `dataDir` before returning. Messages are restored
+     * from the latest snapshot in `dataDir` and the logs written after it.
+     *
+     * A mutation is visible to readers and listeners as soon as it is
+     * applied, before it is durable, so concurrent readers may see it
+     * before its writer returns. If the log then fails, the writer gets an
+     * UncheckedIOException while the mutation stays visible until restart,
+     * and every later mutation is refused, leaving the messages read-only.
+     */
+    public MessageDao(Path dataDir, int maxBatchSize, long maxDelayMicros) throws IOException {
+        this(new HeapMessageStore(), dataDir, maxBatchSize, maxDelayMicros);
+    }
+
+    public MessageDao(MessageStore store, Path dataDir,
+                      int maxBatchSize, long maxDelayMicros) throws IOException {
+        this(store, DEFAULT_CHANGE_RETENTION, dataDir, maxBatchSize, maxDelayMicros);
+    }
+
+    public MessageDao(MessageStore store, int changeRetention, Path dataDir,
+                      int maxBatchSize, long maxDelayMicros) throws IOException {
+        this(store, changeRetention, dataDir, maxBatchSize, maxDelayMicros, null);
+    }
+
+    /**
+     * Same as the public constructor, opening log files through `opener`
+     * unless it is null
+     */
+    MessageDao(MessageStore store, int changeRetention, Path dataDir, int maxBatchSize,
+               long maxDelayMicros, MessageLog.ChannelOpener opener) throws IOException {
+        this(store, changeRetention);
+        this.opener = opener;
+        // Sequence numbers are durable, so versions stay valid across restarts
+        this.epoch = 0;
+        this.dataDir = dataDir;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayMicros = maxDelayMicros;
+
+        Path snapshotFile = dataDir.resolve(SNAPSHOT_FILE);
+        long snapshotSequence = 0;
+
+        if(Files.exists(snapshotFile)) {
+            MessageSnapshot snapshot = MessageSnapshot.load(snapshotFile, this::restore);
+            counter.set(Math.max(counter.get(), snapshot.getCounter()));
+            sequence = snapshotSequence = snapshot.getSequence();
+        }
+
+        // The snapshot may already include some later mutations, replaying
+        // them again is harmless as each record sets the final state of its id
+        final long covered = snapshotSequence;
+        for(long logGeneration : logGenerations()) {
+            MessageLog.replay(logFile(logGeneration), (operation, recordSequence, id, message) -> {
+                if(recordSequence > covered) {
+                    replay(operation, recordSequence, id, message);
+                }
+            });
+            generation = logGeneration;
+        }
+
+        version = sequence;
+        changes.reset(sequence);
+        generation++;
+        log = openLog(generation);
+    }
+
+    /**
+     * Creates the MessageDao used by the application. Messages are only kept
+     * in memory unless the `messaging.data.dir` system property names a
+     * directory to keep a write-ahead log and snapshots in. Setting
+     * `messaging.storage` to `offheap` keeps message contents outside the
+     * Java heap.
+     */
+    public static MessageDao fromSystemProperties() {
+
+        MessageStore store;
+        String storage = System.getProperty("messaging.storage", "heap");
+
+        if(storage.equals("offheap")) {
+            store = new OffHeapMessageStore(
+                    Integer.getInteger("messaging.storage.slabSize", 4 << 20));
+        } else if(storage.equals("heap")) {
+            store = new HeapMessageStore();
+        } else {
+            throw new IllegalArgumentException("Unknown messaging.storage " + storage);
+        }
+
+        int changeRetention = Integer.getInteger("messaging.changes.retention",
+                DEFAULT_CHANGE_RETENTION);
+        String dataDir = System.getProperty("messaging.data.dir");
+
+        if(dataDir == null) {
+            return new MessageDao(store, changeRetention);
+        }
+
+        try {
+            Path dir = Files.createDirectories(Paths.get(dataDir));
+
+            MessageDao messageDao = new MessageDao(store, changeRetention, dir,
+                    Integer.getInteger("messaging.log.maxBatchSize", 1024),
+                    Long.getLong("messaging.log.maxDelayMicros", 0L));
+
+            long interval = Long.getLong("messaging.snapshot.intervalSeconds", 300L);
+            if(interval > 0) {
+                messageDao.scheduleSnapshots(interval);
+            }
+
+            return messageDao;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open message log in " + dataDir, e);
+        }
+    }
+
+    /**
+     * Writes a snapshot of all messages to the data directory and deletes
+     * the logs it makes redundant. Writers are only paused while the log is
+     * switched to a new file, not while the snapshot is written. Fails with
+     * UncheckedIOException, without switching logs, once the log has failed.
+     */
+    public MessageSnapshot snapshot() throws IOException {
+
+        if(dataDir == null) {
+            throw new IllegalStateException("Snapshots require a data directory");
+        }
+
+        synchronized (snapshotLock) {
+
+            long snapshotSequence;
+            long snapshotCounter;
+            long snapshotGeneration;
+
+            synchronized (writeLock) {
+                if(closed) {
+                    throw new IOException("MessageDao is closed");
+                }
+                // A fresh log would make messages writable again, although
+                // what the failed one lost is not durable anywhere
+                checkWritable();
+
+                // Every record up to now stays in the older logs, all of
+                // which the snapshot below will cover
+                log.close();
+                generation++;
+                log = openLog(generation);
+
+                snapshotSequence = sequence;
+                snapshotCounter = counter.get();
+                snapshotGeneration = generation;
+            }
+
+            MessageSnapshot snapshot = MessageSnapshot.write(dataDir.resolve(SNAPSHOT_FILE),
+                    snapshotSequence, snapshotCounter, this);
+
+            for(long logGeneration : logGenerations()) {
+                if(logGeneration < snapshotGeneration) {
+                    Files.deleteIfExists(logFile(logGeneration));
+                }
+            }
+
+            return snapshot;
+        }
+    }
+
+    /**
+     * Takes a snapshot every `intervalSeconds` in the background
+     */
+    public void scheduleSnapshots(long intervalSeconds) {
+
+        synchronized (snapshotLock) {
+            if(snapshotScheduler == null) {
+                snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "message-snapshot");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        }
+
+        snapshotScheduler.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Could not write message snapshot", e);
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
     }
 
     public String getAllMessages() {
 
-        JSONObject mapRepresentation = new JSONObject(messages);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        try {
+            writeAllMessages(output);
+        } catch (IOException e) {
+            // ByteArrayOutputStream does not throw
+            throw new IllegalStateException(e);
+        }
+
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Streams the UTF-8 Json representation of all messages, keyed by id
+     * in ascending id order, to `output` one message at a time so memory
+     * use does not grow with the number of stored messages
+     */
+    public void writeAllMessages(OutputStream output) throws IOException {
+
+        output.write('{');
+        boolean first = true;
+
+        for(Long id : ids) {
+            Message message = messages.get(id);
+
+            // Skip ids removed since the iterator passed them
+            if(message == null) {
+                continue;
+            }
 
-        return mapRepresentation.toString();
+            if( ! first) {
+                output.write(',');
+            }
+            first = false;
+
+            output.write('"');
+            output.write(Long.toString(id).getBytes(StandardCharsets.US_ASCII));
+            output.write('"');
+            output.write(':');
+            output.write(message.toJson());
+        }
+
+        output.write('}');
+    }
+
+    /**
+     * Writes all messages to `generator` like writeAllMessages(OutputStream),
+     * for formats other than Json
+     */
+    public void writeAllMessages(JsonGenerator generator) throws IOException {
+
+        generator.writeStartObject();
+
+        for(Long id : ids) {
+            Message message = messages.get(id);
+
+            // Skip ids removed since the iterator passed them
+            if(message == null) {
+                continue;
+            }
+
+            generator.writeFieldName(Long.toString(id));
+            message.write(generator);
+        }
+
+        generator.writeEndObject();
+    }
+
+    /**
+     * Streams the UTF-8 Json representation of the messages with the given
+     * `ids`, in the given order and shaped like the messages of a
+     * MessagePage, with null in place of every id that was not found:
+     *
+     *     {"messages":[{"id":1,"author":...,"content":...},null]}
+     */
+    public void writeMessages(long[] ids, OutputStream output) throws IOException {
+
+        output.write("{\"messages\":[".getBytes(StandardCharsets.US_ASCII));
+
+        for(int i = 0; i < ids.length; i++) {
+            if(i > 0) {
+                output.write(',');
+            }
+
+            Message message = messages.get(ids[i]);
+
+            if(message == null) {
+                output.write("null".getBytes(StandardCharsets.US_ASCII));
+                continue;
+            }
+
+            // The cached Json of the message, with the id added in front
+            byte[] json = message.toJson();
+            output.write("{\"id\":".getBytes(StandardCharsets.US_ASCII));
+            output.write(Long.toString(ids[i]).getBytes(StandardCharsets.US_ASCII));
+            output.write(',');
+            output.write(json, 1, json.length - 1);
+        }
+
+        output.write(']');
+        output.write('}');
+    }
+
+    /**
+     * Writes the messages with the given `ids` to `generator` like
+     * writeMessages(long[], OutputStream), for formats other than Json
+     */
+    public void writeMessages(long[] ids, JsonGenerator generator) throws IOException {
+
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("messages");
+
+        for(long id : ids) {
+            Message message = messages.get(id);
+
+            if(message == null) {
+                generator.writeNull();
+                continue;
+            }
+
+            generator.writeStartObject();
+            generator.writeNumberField("id", id);
+            generator.writeStringField("author", message.getAuthor());
+            generator.writeStringField("content", message.getContent());
+            generator.writeEndObject();
+        }
+
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    /**
+     * Returns at most `limit` messages in ascending id order. When `after`
+     * is given the page starts right after that id, when only `before` is
+     * given the page ends right before that id. Cost is proportional to
+     * the page size, not to the number of stored messages.
+     */
+    public MessagePage getPage(Long after, Long before, int limit) {
+        return getPage(null, after, before, limit);
+    }
+
+    /**
+     * Same as getPage(after, before, limit), but only including messages
+     * by `author` when it is not null. Cost is proportional to the page
+     * size, not to the number of messages by that author.
+     */
+    public MessagePage getPage(String author, Long after, Long before, int limit) {
+
+        NavigableSet<Long> index = ids;
+
+        if(author != null) {
+            index = authorIds.get(author);
+            if(index == null) {
+                return new MessagePage(Collections.<Long, Message>emptyMap(), null, null);
+            }
+        }
+
+        NavigableSet<Long> range;
+
+        if(after != null && before != null) {
+            range = after < before
+                    ? index.subSet(after, false, before, false)
+                    : Collections.<Long>emptyNavigableSet();
+        } else if(after != null) {
+            range = index.tailSet(after, false);
+        } else if(before != null) {
+            // Walk backwards from `before` so the page is adjacent to it
+            range = index.headSet(before, false).descendingSet();
+        } else {
+            range = index;
+        }
+
+        List<Long> pageIds = new ArrayList<>(Math.min(limit, 64));
+        List<Message> pageMessages = new ArrayList<>(Math.min(limit, 64));
+        Iterator<Long> iterator = range.iterator();
+
+        while(pageIds.size() < limit && iterator.hasNext()) {
+            Long id = iterator.next();
+            Message message = messages.get(id);
+
+            // Skip ids removed since the iterator passed them
+            if(message != null) {
+                pageIds.add(id);
+                pageMessages.add(message);
+            }
+        }
+
+        if(after == null && before != null) {
+            Collections.reverse(pageIds);
+            Collections.reverse(pageMessages);
+        }
+
+        Map<Long, Message> page = new LinkedHashMap<>();
+        for(int i = 0; i < pageIds.size(); i++) {
+            page.put(pageIds.get(i), pageMessages.get(i));
+        }
+
+        Long next = null;
+        Long previous = null;
+
+        if( ! pageIds.isEmpty()) {
+            Long first = pageIds.get(0);
+            Long last = pageIds.get(pageIds.size() - 1);
+            next = index.higher(last) != null ? last : null;
+            previous = index.lower(first) != null ? first : null;
+        }
+
+        return new MessagePage(page, next, previous);
+    }
+
+    /**
+     * Returns up to `limit` messages containing every word of `query`,
+     * best matches first
+     */
+    public SearchResults search(String query, int limit) {
+
+        SearchResults results = new SearchResults();
+
+        for(SearchIndex.Hit hit : searchIndex.search(query, limit)) {
+            Message message = messages.get(hit.getId());
+
+            // Skip messages removed since the search
+            if(message != null) {
+                results.add(hit.getId(), hit.getScore(), message);
+            }
+        }
+
+        return results;
     }
 
     public Message get(long id) throws NoSuchElementException {
 
-        if( ! messages.containsKey(id)) {
+        Message message = messages.get(id);
+
+        if(message == null) {
             throw new NoSuchElementException();
         }
 
-        return messages.get(id);
+        return message;
     }
 
     public long add(Message message) {
 
-        long id = counter.incrementAndGet();
-        messages.put(id, message);
+        long id;
+        CompletableFuture<Void> commit;
+        // Tokenized before blocking other writers
+        SearchIndex.Terms terms = SearchIndex.Terms.of(message);
 
+        synchronized (writeLock) {
+            checkWritable();
+            id = counter.incrementAndGet();
+            Message stored = versioned(message);
+            store(id, stored, terms, null, null);
+            commit = append(MessageLog.Operation.ADD, id, stored);
+        }
+
+        awaitDurable(commit);
         return id;
     }
 
+    /**
+     * Adds all of `messages` with consecutive ids, reserved in one step, and
+     * waits for durability once for the whole batch. Returns the first id,
+     * the last one being first + messages.size() - 1. Other writers wait
+     * while the whole batch is applied, and it takes up as many entries of
+     * the change history, so batches should stay well below the change
+     * retention.
+     */
+    public long addAll(List<Message> messages) {
+
+        long first;
+        CompletableFuture<Void> commit = null;
+        List<SearchIndex.Terms> terms = new ArrayList<>(messages.size());
+
+        for(Message message : messages) {
+            terms.add(SearchIndex.Terms.of(message));
+        }
+
+        synchronized (writeLock) {
+            checkWritable();
+            first = counter.getAndAdd(messages.size()) + 1;
+
+            long id = first;
+            for(int i = 0; i < messages.size(); i++) {
+                Message stored = versioned(messages.get(i));
+                store(id, stored, terms.get(i), null, null);
+                // Log records are made durable in order, so the last one covers the batch
+                commit = append(MessageLog.Operation.ADD, id, stored);
+                id++;
+            }
+        }
+
+        awaitDurable(commit);
+        return first;
+    }
+
     public void update(long id, Message message) throws NoSuchElementException {
 
-        if( ! messages.containsKey(id)) {
-            throw new NoSuchElementException();
+        CompletableFuture<Void> commit;
+        SearchIndex.Terms terms = SearchIndex.Terms.of(message);
+        // Only used if the message is not replaced again in the meantime
+        SearchIndex.Terms previousTerms = SearchIndex.Terms.of(messages.get(id));
+
+        synchronized (writeLock) {
+            checkWritable();
+            Message previous = messages.get(id);
+
+            if(previous == null) {
+                throw new NoSuchElementException();
+            }
+
+            Message stored = versioned(message);
+            store(id, stored, terms, previous, previousTerms);
+            commit = append(MessageLog.Operation.UPDATE, id, stored);
         }
 
-        messages.put(id, message);
+        awaitDurable(commit);
     }
 
 
     public void remove(long id) throws NoSuchElementException {
 
-        if( ! messages.containsKey(id)) {
-            throw new NoSuchElementException();
+        CompletableFuture<Void> commit;
+        SearchIndex.Terms previousTerms = SearchIndex.Terms.of(messages.get(id));
+
+        synchronized (writeLock) {
+            checkWritable();
+            Message previous = messages.get(id);
+
+            if(previous == null) {
+                throw new NoSuchElementException();
+            }
+
+            delete(id, previous, previousTerms);
+            commit = append(MessageLog.Operation.REMOVE, id, null);
         }
 
-        messages.remove(id);
+        awaitDurable(commit);
+    }
+
+    /**
+     * Replaces the message with `id` by `message`, but only if it was written
+     * by the same author and, unless `expectedVersion` is ANY_VERSION, still
+     * has that version. The check and the write are atomic.
+     */
+    public WriteResult compareAndReplace(long id, Message message, long expectedVersion) {
+
+        WriteResult result;
+        Message stored;
+        CompletableFuture<Void> commit;
+        SearchIndex.Terms terms = SearchIndex.Terms.of(message);
+        SearchIndex.Terms previousTerms = SearchIndex.Terms.of(messages.get(id));
+
+        synchronized (writeLock) {
+            checkWritable();
+            Message previous = messages.get(id);
+
+            result = check(previous, message.getAuthor(), expectedVersion);
+            if(result != null) {
+                return result;
+            }
+
+            stored = versioned(message);
+            store(id, stored, terms, previous, previousTerms);
+            commit = append(MessageLog.Operation.UPDATE, id, stored);
+        }
+
+        awaitDurable(commit);
+        return new WriteResult(WriteResult.Status.OK, stored);
+    }
+
+    /**
+     * Removes the message with `id`, but only if it was written by `author`
+     * and, unless `expectedVersion` is ANY_VERSION, still has that version.
+     * The check and the removal are atomic.
+     */
+    public WriteResult compareAndRemove(long id, String author, long expectedVersion) {
+
+        WriteResult result;
+        Message previous;
+        CompletableFuture<Void> commit;
+        SearchIndex.Terms previousTerms = SearchIndex.Terms.of(messages.get(id));
+
+        synchronized (writeLock) {
+            checkWritable();
+            previous = messages.get(id);
+
+            result = check(previous, author, expectedVersion);
+            if(result != null) {
+                return result;
+            }
+
+            delete(id, previous, previousTerms);
+            commit = append(MessageLog.Operation.REMOVE, id, null);
+        }
+
+        awaitDurable(commit);
+        return new WriteResult(WriteResult.Status.OK, previous);
     }
 
     public void clear() {
 
+        CompletableFuture<Void> commit;
+
+        synchronized (writeLock) {
+            checkWritable();
+            reset();
+            commit = append(MessageLog.Operation.CLEAR, 0, null);
+        }
+
+        awaitDurable(commit);
+    }
+
+    /**
+     * Stops taking snapshots and closes the write-ahead log, if any, once
+     * everything written so far is durable
+     */
+    @Override
+    public void close() throws IOException {
+
+        synchronized (snapshotLock) {
+            if(snapshotScheduler != null) {
+                snapshotScheduler.shutdownNow();
+            }
+        }
+
+        synchronized (writeLock) {
+            closed = true;
+            if(log != null) {
+                log.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the sequence number of the latest mutation, which changes
+     * whenever any message is added, updated or removed. It is only
+     * published once the mutation is visible, so a version read before
+     * reading messages never claims more than what was read.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns up to `limit` changes following the one with sequence number
+     * `sequence`, oldest first, or null if some of them are no longer kept
+     * and everything has to be reloaded instead. Changes carry the full
+     * state of a message, so applying a change again is harmless.
+     */
+    public List<MessageChange> getChanges(long sequence, int limit) {
+        return changes.after(sequence, limit);
+    }
+
+    /**
+     * Returns an opaque cursor for the state after the change with sequence
+     * number `sequence`, also used for ETags and event ids
+     */
+    public String cursor(long sequence) {
+        return epoch + "-" + sequence;
+    }
+
+    /**
+     * Returns the sequence number of a cursor made by cursor(), or -1 if it
+     * was not made by this MessageDao
+     */
+    public long sequence(String cursor) {
+
+        String prefix = epoch + "-";
+
+        if( ! cursor.startsWith(prefix)) {
+            return -1;
+        }
+
+        try {
+            long sequence = Long.parseLong(cursor.substring(prefix.length()));
+            return sequence < 0 ? -1 : sequence;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Registers `listener` to be notified of every later change
+     */
+    public void addListener(MessageListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(MessageListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the message with `id`, or null if there is none
+     */
+    public Message find(long id) {
+        return messages.get(id);
+    }
+
+    /**
+     * Ids of all stored messages, in ascending order
+     */
+    NavigableSet<Long> getIds() {
+        return Collections.unmodifiableNavigableSet(ids);
+    }
+
+    /**
+     * Assigns the next sequence number to a mutation already applied in
+     * memory, publishes it as the version, notifies listeners and logs
+     * the mutation
+     */
+    private CompletableFuture<Void> append(MessageLog.Operation operation, long id, Message message) {
+
+        sequence++;
+
+        MessageChange change = new MessageChange(operation, sequence, id, message);
+        // Added before the version is published, so any cursor made from
+        // the version can be read from the history
+        changes.add(change);
+        version = sequence;
+
+        for(MessageListener listener : listeners) {
+            listener.changed(change);
+        }
+
+        return log == null ? null : log.append(operation, sequence, id, message);
+    }
+
+    /**
+     * Refuses a mutation before it is applied if the log can no longer make
+     * it durable
+     */
+    private void checkWritable() {
+
+        if(log == null) {
+            return;
+        }
+
+        IOException failure = closed ? new IOException("MessageDao is closed") : log.getFailure();
+
+        if(failure != null) {
+            throw new UncheckedIOException("Message log is not writable, messages are read-only", failure);
+        }
+    }
+
+    /**
+     * Returns why `current` may not be changed by `author` at
+     * `expectedVersion`, or null if it may
+     */
+    private static WriteResult check(Message current, String author, long expectedVersion) {
+
+        if(current == null) {
+            return WriteResult.NOT_FOUND;
+        }
+        if( ! current.getAuthor().equals(author)) {
+            return new WriteResult(WriteResult.Status.FORBIDDEN, current);
+        }
+        if(expectedVersion != ANY_VERSION && current.getVersion() != expectedVersion) {
+            return new WriteResult(WriteResult.Status.CONFLICT, current);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the copy of `message` to store, versioned with the sequence
+     * number its mutation will be appended with
+     */
+    private Message versioned(Message message) {
+        return new Message(message.getAuthor(), message.getContent(), sequence + 1);
+    }
+
+    private static void awaitDurable(CompletableFuture<Void> commit) {
+
+        if(commit == null) {
+            return;
+        }
+
+        try {
+            commit.join();
+        } catch (CompletionException e) {
+            if(e.getCause() instanceof IOException) {
+                throw new UncheckedIOException("Could not write to message log",
+                        (IOException) e.getCause());
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Stores `message` under `id` and updates the indexes, where `previous`
+     * is the message it replaces, if any. `terms` and `previousTerms` may
+     * hold their terms, tokenized before taking the write lock.
+     */
+    private void store(long id, Message message, SearchIndex.Terms terms,
+                       Message previous, SearchIndex.Terms previousTerms) {
+
+        messages.put(id, message);
+        ids.add(id);
+
+        if(previous != null && ! previous.getAuthor().equals(message.getAuthor())) {
+            removeAuthorId(previous.getAuthor(), id);
+        }
+        authorIds.computeIfAbsent(message.getAuthor(), author -> new ConcurrentSkipListSet<>())
+                .add(id);
+        searchIndex.add(id, message, terms, previous, previousTerms);
+    }
+
+    private void delete(long id, Message previous, SearchIndex.Terms previousTerms) {
+
+        messages.remove(id);
+        ids.remove(id);
+        removeAuthorId(previous.getAuthor(), id);
+        searchIndex.remove(id, previous, previousTerms);
+    }
+
+    private void removeAuthorId(String author, long id) {
+
+        ConcurrentSkipListSet<Long> authorSet = authorIds.get(author);
+
+        if(authorSet != null) {
+            authorSet.remove(id);
+            if(authorSet.isEmpty()) {
+                authorIds.remove(author);
+            }
+        }
+    }
+
+    private void reset() {
+
         messages.clear();
+        ids.clear();
+        authorIds.clear();
+        searchIndex.clear();
         counter.set(0);
     }
+
+    private void restore(long id, Message message) {
+
+        store(id, message, null, messages.get(id), null);
+        counter.set(Math.max(counter.get(), id));
+    }
+
+    private MessageLog openLog(long generation) throws IOException {
+        return opener == null
+                ? MessageLog.open(logFile(generation), maxBatchSize, maxDelayMicros, this::replay)
+                : MessageLog.open(logFile(generation), opener, maxBatchSize, maxDelayMicros, this::replay);
+    }
+
+    private List<Long> logGenerations() throws IOException {
+
+        List<Long> generations = new ArrayList<>();
+
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(dataDir)) {
+            for(Path file : files) {
+                Matcher matcher = LOG_FILE.matcher(file.getFileName().toString());
+                if(matcher.matches()) {
+                    generations.add(Long.parseLong(matcher.group(1)));
+                }
+            }
+        }
+
+        Collections.sort(generations);
+        return generations;
+    }
+
+    private Path logFile(long logGeneration) {
+        return dataDir.resolve("messages." + logGeneration + ".log");
+    }
+
+    private void replay(MessageLog.Operation operation, long sequence, long id, Message message) {
+
+        switch (operation) {
+            case ADD:
+            case UPDATE:
+                restore(id, message);
+                break;
+            case REMOVE:
+                Message previous = messages.get(id);
+                if(previous != null) {
+                    delete(id, previous, null);
+                }
+                break;
+            case CLEAR:
+                reset();
+                break;
+        }
+
+        this.sequence = Math.max(this.sequence, sequence);
+        this.version = this.sequence;
+    }
 }
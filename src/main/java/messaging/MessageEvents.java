@@ -0,0 +1,422 @@
+package messaging;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.glassfish.jersey.media.sse.OutboundEvent;
+
+import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes the changes of a MessageDao to Server-Sent Events subscribers.
+ *
+ * The MessageDao only wakes the senders, a constant amount of work however
+ * many subscribers there are. Each subscriber then reads the changes after
+ * its own cursor from the MessageDao change history, on a small shared
+ * pool of threads, one batch of up to `batchSize` changes at a time before
+ * making way for the next subscriber, so the threads take turns however
+ * far behind some subscribers are. Changes read together are coalesced per
+ * message id, so a slow subscriber only gets the latest change of each
+ * message in a batch, and a subscriber that falls further behind than the
+ * change history keeps is sent a `resync` event and disconnected. A
+ * subscriber whose connection takes longer than `writeTimeout` to accept
+ * a batch is disconnected, so stalled clients cannot hold on to the
+ * threads.
+ *
+ * Event ids are MessageDao cursors. Subscribers reconnecting with a
+ * Last-Event-ID start from that cursor, or get a `resync` event when the
+ * changes after it are no longer kept.
+ */
+public class MessageEvents implements MessageListener {
+
+    private static final OutboundEvent RESYNC_EVENT = new OutboundEvent.Builder()
+            .name("resync")
+            .data(String.class, "{}")
+            .build();
+
+    private final MessageDao dao;
+    private final int batchSize;
+    private final long writeTimeoutNanos;
+    private final ExecutorService senders;
+    // Disconnects the subscribers stalled writing
+    private final ScheduledExecutorService watchdog;
+    // Events already built for another subscriber, by sequence number
+    private final BoundedCache<Long, OutboundEvent> events;
+    // Whether waking the subscribers is already scheduled
+    private final AtomicBoolean waking = new AtomicBoolean();
+
+    // Guarded by `lock`
+    private final Object lock = new Object();
+    private final List<Subscriber> subscribers = new ArrayList<>();
+
+    /**
+     * @param batchSize maximum number of changes read and sent at once
+     * @param senderThreads number of threads writing to subscribers
+     * @param writeTimeoutMillis time a subscriber may take to accept a batch
+     */
+    public MessageEvents(MessageDao dao, int batchSize, int senderThreads, long writeTimeoutMillis) {
+
+        this.dao = dao;
+        this.batchSize = batchSize;
+        this.writeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(writeTimeoutMillis);
+        this.events = new BoundedCache<>(batchSize);
+
+        AtomicInteger threads = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(senderThreads, runnable -> {
+            Thread thread = new Thread(runnable, "message-events-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "message-events-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Stalled writes are found within 1.25 times the timeout
+        long interval = Math.max(writeTimeoutMillis / 4, 1);
+        watchdog.scheduleWithFixedDelay(this::disconnectStalled, interval, interval, TimeUnit.MILLISECONDS);
+
+        dao.addListener(this);
+    }
+
+    /**
+     * Creates MessageEvents for `dao` configured by the
+     * `messaging.events.batchSize`, `messaging.events.threads` and
+     * `messaging.events.writeTimeoutMillis` system properties
+     */
+    public static MessageEvents fromSystemProperties(MessageDao dao) {
+        return new MessageEvents(dao,
+                Integer.getInteger("messaging.events.batchSize", 1024),
+                Integer.getInteger("messaging.events.threads", 4),
+                Long.getLong("messaging.events.writeTimeoutMillis", 10000L));
+    }
+
+    /**
+     * Returns an event stream of all changes after the one `lastEventId`
+     * names, or of all later changes if it is null
+     */
+    public EventOutput subscribe(String lastEventId) {
+
+        EventOutput output = new EventOutput();
+        long cursor = lastEventId == null ? dao.getVersion() : dao.sequence(lastEventId);
+        Subscriber subscriber = new Subscriber(output, cursor);
+
+        if(dao.getChanges(cursor, 0) == null) {
+            subscriber.overflow();
+            return output;
+        }
+
+        synchronized (lock) {
+            subscribers.add(subscriber);
+        }
+
+        // Sends the changes missed since `lastEventId`, if any
+        subscriber.wake();
+        return output;
+    }
+
+    /**
+     * Called by the MessageDao while it is blocked, so only schedules
+     * waking the subscribers
+     */
+    @Override
+    public void changed(MessageChange change) {
+        if(waking.compareAndSet(false, true)) {
+            try {
+                senders.execute(this::wakeSubscribers);
+            } catch (RejectedExecutionException e) {
+                // Closed
+            }
+        }
+    }
+
+    private void wakeSubscribers() {
+
+        // Changes made from here on schedule another round
+        waking.set(false);
+
+        List<Subscriber> current;
+
+        synchronized (lock) {
+            current = new ArrayList<>(subscribers);
+        }
+
+        for(Subscriber subscriber : current) {
+            subscriber.wake();
+        }
+    }
+
+    private void disconnectStalled() {
+
+        List<Subscriber> current;
+
+        synchronized (lock) {
+            current = new ArrayList<>(subscribers);
+        }
+
+        long now = System.nanoTime();
+
+        for(Subscriber subscriber : current) {
+            if(subscriber.interruptIfStalled(now)) {
+                subscriber.close();
+            }
+        }
+    }
+
+    /**
+     * Disconnects every subscriber and stops sending events
+     */
+    public void close() {
+
+        dao.removeListener(this);
+
+        List<Subscriber> closing;
+
+        synchronized (lock) {
+            closing = new ArrayList<>(subscribers);
+        }
+
+        for(Subscriber subscriber : closing) {
+            subscriber.close();
+        }
+
+        senders.shutdown();
+        watchdog.shutdown();
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        synchronized (lock) {
+            subscribers.remove(subscriber);
+        }
+    }
+
+    /**
+     * Returns the Server-Sent Event of `change`, built once and shared by
+     * every subscriber sent it at about the same time
+     */
+    private OutboundEvent outbound(MessageChange change) {
+
+        OutboundEvent event = events.get(change.getSequence());
+
+        if(event == null) {
+            event = new OutboundEvent.Builder()
+                    .id(dao.cursor(change.getSequence()))
+                    .name(change.getOperation().name().toLowerCase(Locale.ROOT))
+                    .mediaType(MediaType.APPLICATION_JSON_TYPE)
+                    .data(String.class, data(change))
+                    .build();
+            events.put(change.getSequence(), event);
+        }
+
+        return event;
+    }
+
+    /**
+     * Returns the Json data of the event of `change`, leaving out the id of
+     * clears and the message of removals and clears like ChangePage does:
+     *
+     *     {"id":3,"author":...,"content":...}
+     */
+    private static String data(MessageChange change) {
+
+        StringWriter writer = new StringWriter();
+
+        try(JsonGenerator generator = MessageJsonWriter.JSON.createGenerator(writer)) {
+            generator.writeStartObject();
+            if(change.getId() != 0) {
+                generator.writeNumberField("id", change.getId());
+            }
+            if(change.getMessage() != null) {
+                generator.writeStringField("author", change.getMessage().getAuthor());
+                generator.writeStringField("content", change.getMessage().getContent());
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
+            // StringWriter does not throw
+            throw new IllegalStateException(e);
+        }
+
+        return writer.toString();
+    }
+
+    private class Subscriber implements Runnable {
+
+        private final EventOutput output;
+        // Sequence number of the last change sent, only used by the sender running this
+        private long cursor;
+
+        // All fields below are guarded by `this`
+        private boolean woken;
+        private boolean overflowed;
+        private boolean scheduled;
+        // Sender thread writing to the subscriber and since when, if any
+        private Thread writer;
+        private long writingSince;
+
+        private Subscriber(EventOutput output, long cursor) {
+            this.output = output;
+            this.cursor = cursor;
+        }
+
+        /**
+         * Makes the subscriber read the changes after its cursor
+         */
+        private synchronized void wake() {
+            woken = true;
+            schedule();
+        }
+
+        /**
+         * Makes the subscriber resync
+         */
+        private synchronized void overflow() {
+            overflowed = true;
+            schedule();
+        }
+
+        private synchronized void schedule() {
+            if( ! scheduled) {
+                scheduled = true;
+                try {
+                    senders.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // Closed
+                    scheduled = false;
+                }
+            }
+        }
+
+        /**
+         * Sends one batch of changes, then schedules the subscriber again
+         * behind the others if there may be more
+         */
+        @Override
+        public void run() {
+
+            boolean resync;
+
+            synchronized (this) {
+                woken = false;
+                resync = overflowed;
+            }
+
+            try {
+                List<MessageChange> changes = resync ? null : dao.getChanges(cursor, batchSize);
+
+                if(changes == null) {
+                    write(RESYNC_EVENT);
+                    close();
+                    return;
+                }
+
+                send(changes);
+
+                synchronized (this) {
+                    scheduled = false;
+                    if(changes.size() == batchSize) {
+                        woken = true;
+                    }
+                    if(woken || overflowed) {
+                        schedule();
+                    }
+                }
+            } catch (IOException e) {
+                // The subscriber went away, or stalled
+                close();
+            }
+        }
+
+        /**
+         * Sends `changes`, coalesced per message id
+         */
+        private void send(List<MessageChange> changes) throws IOException {
+
+            if(changes.isEmpty()) {
+                return;
+            }
+
+            // Latest change of each message id, in sequence order
+            Map<Long, MessageChange> latest = new LinkedHashMap<>();
+
+            for(MessageChange change : changes) {
+                if(change.getOperation() == MessageLog.Operation.CLEAR) {
+                    // Supersedes every earlier change
+                    latest.clear();
+                } else {
+                    latest.remove(change.getId());
+                }
+                latest.put(change.getId(), change);
+            }
+
+            List<OutboundEvent> batch = new ArrayList<>(latest.size());
+            for(MessageChange change : latest.values()) {
+                batch.add(outbound(change));
+            }
+
+            write(batch.toArray(new OutboundEvent[0]));
+            cursor = changes.get(changes.size() - 1).getSequence();
+        }
+
+        /**
+         * Writes `batch`, letting the watchdog interrupt it once it takes
+         * longer than the write timeout
+         */
+        private void write(OutboundEvent... batch) throws IOException {
+
+            synchronized (this) {
+                writer = Thread.currentThread();
+                writingSince = System.nanoTime();
+            }
+
+            try {
+                for(OutboundEvent event : batch) {
+                    output.write(event);
+                }
+            } finally {
+                synchronized (this) {
+                    writer = null;
+                    // Clears an interrupt that came too late to matter, so
+                    // it does not hit the next subscriber of this thread
+                    Thread.interrupted();
+                }
+            }
+        }
+
+        /**
+         * Interrupts the sender writing to this subscriber if it has taken
+         * longer than the write timeout, and returns whether it had
+         */
+        private synchronized boolean interruptIfStalled(long now) {
+            if(writer != null && now - writingSince > writeTimeoutNanos) {
+                writer.interrupt();
+                return true;
+            }
+            return false;
+        }
+
+        private void close() {
+
+            unsubscribe(this);
+
+            try {
+                output.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+}
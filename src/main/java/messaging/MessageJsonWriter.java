@@ -0,0 +1,65 @@
+package messaging;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+/**
+ * Writes Messages and the pages of messages and changes as Json straight
+ * to the response, without building an object tree or string first.
+ * Messages are written from their cached representation, pages through a
+ * Jackson JsonGenerator, whose buffers Jackson recycles between responses.
+ */
+@Provider
+@Produces(MediaType.APPLICATION_JSON)
+public class MessageJsonWriter implements MessageBodyWriter<Object> {
+
+    // Thread-safe once configured, and shared since creating one is costly
+    static final JsonFactory JSON = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return (type == Message.class || type == MessagePage.class
+                || type == SearchResults.class || type == ChangePage.class)
+                && MediaType.APPLICATION_JSON_TYPE.isCompatible(mediaType);
+    }
+
+    @Override
+    public long getSize(Object entity, Class<?> type, Type genericType, Annotation[] annotations,
+                        MediaType mediaType) {
+        return entity instanceof Message ? ((Message) entity).toJson().length : -1;
+    }
+
+    @Override
+    public void writeTo(Object entity, Class<?> type, Type genericType, Annotation[] annotations,
+                        MediaType mediaType, MultivaluedMap<String, Object> httpHeaders,
+                        OutputStream entityStream) throws IOException, WebApplicationException {
+
+        if(entity instanceof Message) {
+            entityStream.write(((Message) entity).toJson());
+            return;
+        }
+
+        try(JsonGenerator generator = JSON.createGenerator(entityStream, JsonEncoding.UTF8)) {
+            if(entity instanceof MessagePage) {
+                ((MessagePage) entity).write(generator);
+            } else if(entity instanceof SearchResults) {
+                ((SearchResults) entity).write(generator);
+            } else {
+                ((ChangePage) entity).write(generator);
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package messaging;
+
+/**
+ * Notified of every change applied by a MessageDao
+ */
+public interface MessageListener {
+
+    /**
+     * Called in the order changes are applied, while further changes are
+     * blocked, so implementations must return quickly and never block
+     */
+    void changed(MessageChange change);
+}
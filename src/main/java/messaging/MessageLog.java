@@ -0,0 +1,373 @@
+package messaging;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log of MessageDao mutations.
+ *
+ * Records are written by a single committer thread, which takes every
+ * record queued since its last write (up to `maxBatchSize`, optionally
+ * waiting up to `maxDelayMicros` for more) and forces them to disk with one
+ * fsync, so concurrent mutations share the cost of a sync. Each record is
+ *
+ *     int length | int crc32 | byte operation | long sequence | long id
+ *                | author | content
+ *
+ * where length and crc32 cover the bytes after them, and author and content
+ * are only present for ADD and UPDATE, written as an int byte length
+ * followed by UTF-8 bytes.
+ */
+public class MessageLog implements Closeable {
+
+    public enum Operation {
+        ADD, UPDATE, REMOVE, CLEAR
+    }
+
+    /**
+     * Receives the records of an existing log, in the order they were appended
+     */
+    public interface Replay {
+        void apply(Operation operation, long sequence, long id, Message message);
+    }
+
+    /**
+     * Opens the file a log is written to
+     */
+    interface ChannelOpener {
+        FileChannel open(Path file) throws IOException;
+    }
+
+    private static final int HEADER_SIZE = 8;
+
+    private final FileChannel channel;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread committer;
+
+    private volatile boolean closed;
+    private volatile IOException failure;
+
+    private MessageLog(FileChannel channel, int maxBatchSize, long maxDelayMicros) {
+        this.channel = channel;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+        this.committer = new Thread(this::commitLoop, "message-log-committer");
+        this.committer.setDaemon(true);
+    }
+
+    /**
+     * Opens the log at `file`, creating it if needed. Records already in the
+     * file are passed to `replay` first. A torn or corrupt record at the end
+     * of the file, left behind by a crash during a write, is cut off.
+     */
+    public static MessageLog open(Path file, int maxBatchSize, long maxDelayMicros,
+                                  Replay replay) throws IOException {
+        return open(file, MessageLog::openChannel, maxBatchSize, maxDelayMicros, replay);
+    }
+
+    /**
+     * Same as open(file, maxBatchSize, maxDelayMicros, replay), opening
+     * the file through `opener`
+     */
+    static MessageLog open(Path file, ChannelOpener opener, int maxBatchSize, long maxDelayMicros,
+                           Replay replay) throws IOException {
+
+        if(maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be at least 1");
+        }
+
+        FileChannel channel = opener.open(file);
+
+        try {
+            long valid = replay(channel, replay);
+
+            if(valid < channel.size()) {
+                channel.truncate(valid);
+                channel.force(true);
+            }
+            channel.position(valid);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+
+        MessageLog log = new MessageLog(channel, maxBatchSize, maxDelayMicros);
+        log.committer.start();
+        return log;
+    }
+
+    /**
+     * Passes the intact records of the log at `file` to `replay`, without
+     * opening it for appending
+     */
+    public static void replay(Path file, Replay replay) throws IOException {
+
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            replay(channel, replay);
+        }
+    }
+
+    /**
+     * Queues a record for the next group commit. The returned future
+     * completes once the record is durable, or completes exceptionally if
+     * it could not be written. Callers must not append concurrently, so
+     * that records are logged in the order they were applied.
+     */
+    public CompletableFuture<Void> append(Operation operation, long sequence,
+                                          long id, Message message) {
+
+        Pending pending = new Pending(encode(operation, sequence, id, message));
+
+        if(closed) {
+            pending.future.completeExceptionally(new IOException("Message log is closed"));
+        } else if(failure != null) {
+            pending.future.completeExceptionally(failure);
+        } else {
+            queue.add(pending);
+        }
+
+        return pending.future;
+    }
+
+    /**
+     * Returns why the log could not be written, or null if it has not
+     * failed. Once failed, the log refuses every later record.
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Commits everything queued so far and closes the log
+     */
+    @Override
+    public void close() throws IOException {
+
+        if(closed) {
+            return;
+        }
+        closed = true;
+
+        queue.add(new Pending(null));
+
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void commitLoop() {
+
+        List<Pending> batch = new ArrayList<>(Math.min(maxBatchSize, 1024));
+        boolean stop = false;
+
+        while( ! stop) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, maxBatchSize - batch.size());
+
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while(maxDelayNanos > 0 && batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Pending next = remaining > 0
+                            ? queue.poll(remaining, TimeUnit.NANOSECONDS)
+                            : null;
+                    if(next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                }
+            } catch (InterruptedException e) {
+                // Only close() stops the committer
+                continue;
+            }
+
+            // The close marker is the last record ever queued
+            if(batch.get(batch.size() - 1).record == null) {
+                batch.remove(batch.size() - 1);
+                stop = true;
+            }
+
+            commit(batch);
+            batch.clear();
+        }
+    }
+
+    private void commit(List<Pending> batch) {
+
+        if(batch.isEmpty()) {
+            return;
+        }
+
+        if(failure == null) {
+            ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+            long remaining = 0;
+
+            for(int i = 0; i < buffers.length; i++) {
+                buffers[i] = batch.get(i).record;
+                remaining += buffers[i].remaining();
+            }
+
+            try {
+                while(remaining > 0) {
+                    remaining -= channel.write(buffers);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+
+        for(Pending pending : batch) {
+            if(failure == null) {
+                pending.future.complete(null);
+            } else {
+                pending.future.completeExceptionally(failure);
+            }
+        }
+    }
+
+    private static FileChannel openChannel(Path file) throws IOException {
+        return FileChannel.open(file,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+    private static ByteBuffer encode(Operation operation, long sequence, long id, Message message) {
+
+        byte[] author = null;
+        byte[] content = null;
+        int length = 1 + 8 + 8;
+
+        if(message != null) {
+            author = message.getAuthor().getBytes(StandardCharsets.UTF_8);
+            content = message.getContent().getBytes(StandardCharsets.UTF_8);
+            length += 4 + author.length + 4 + content.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + length);
+        buffer.putInt(length);
+        buffer.putInt(0);
+        buffer.put((byte) operation.ordinal());
+        buffer.putLong(sequence);
+        buffer.putLong(id);
+
+        if(message != null) {
+            buffer.putInt(author.length).put(author);
+            buffer.putInt(content.length).put(content);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), HEADER_SIZE, length);
+        buffer.putInt(4, (int) crc.getValue());
+
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Applies every intact record in `channel` to `replay` and returns the
+     * position right after the last one
+     */
+    private static long replay(FileChannel channel, Replay replay) throws IOException {
+
+        Operation[] operations = Operation.values();
+        long valid = 0;
+
+        channel.position(0);
+        // Not closed, closing it would close the channel as well
+        InputStream stream = new BufferedInputStream(Channels.newInputStream(channel), 1 << 16);
+        DataInputStream input = new DataInputStream(stream);
+        CRC32 crc = new CRC32();
+
+        while(true) {
+            int length;
+            int checksum;
+            byte[] payload;
+
+            try {
+                length = input.readInt();
+                checksum = input.readInt();
+
+                if(length < 1 + 8 + 8 || length > channel.size() - valid - HEADER_SIZE) {
+                    break;
+                }
+
+                payload = new byte[length];
+                input.readFully(payload);
+            } catch (EOFException e) {
+                break;
+            }
+
+            crc.reset();
+            crc.update(payload, 0, length);
+            if((int) crc.getValue() != checksum) {
+                break;
+            }
+
+            ByteBuffer record = ByteBuffer.wrap(payload);
+            int ordinal = record.get();
+            if(ordinal < 0 || ordinal >= operations.length) {
+                break;
+            }
+
+            Operation operation = operations[ordinal];
+            long sequence = record.getLong();
+            long id = record.getLong();
+            Message message = null;
+
+            if(operation == Operation.ADD || operation == Operation.UPDATE) {
+                String author = readString(record);
+                String content = readString(record);
+                message = new Message(author, content, sequence);
+            }
+
+            replay.apply(operation, sequence, id, message);
+            valid += HEADER_SIZE + length;
+        }
+
+        return valid;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+
+        int length = buffer.getInt();
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static class Pending {
+
+        private final ByteBuffer record;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private Pending(ByteBuffer record) {
+            this.record = record;
+        }
+    }
+}
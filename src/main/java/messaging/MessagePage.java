@@ -0,0 +1,84 @@
+package messaging;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Map;
+
+public class MessagePage {
+
+    private final Map<Long, Message> messages;
+    private final Long next;
+    private final Long previous;
+
+    public MessagePage(Map<Long, Message> messages, Long next, Long previous) {
+        this.messages = messages;
+        this.next = next;
+        this.previous = previous;
+    }
+
+    /**
+     * Messages on this page, in ascending id order
+     */
+    public Map<Long, Message> getMessages() {
+        return messages;
+    }
+
+    /**
+     * Cursor to pass as `after` to fetch the following page,
+     * or null if there are no later messages
+     */
+    public Long getNext() {
+        return next;
+    }
+
+    /**
+     * Cursor to pass as `before` to fetch the preceding page,
+     * or null if there are no earlier messages
+     */
+    public Long getPrevious() {
+        return previous;
+    }
+
+    /**
+     * Writes the Json representation of this page to `generator`:
+     *
+     *     {"messages":[{"id":1,"author":...,"content":...}],"next":1,"previous":0}
+     *
+     * leaving out `next` and `previous` when there are no such pages
+     */
+    public void write(JsonGenerator generator) throws IOException {
+
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("messages");
+
+        for(Map.Entry<Long, Message> entry : messages.entrySet()) {
+            generator.writeStartObject();
+            generator.writeNumberField("id", entry.getKey());
+            generator.writeStringField("author", entry.getValue().getAuthor());
+            generator.writeStringField("content", entry.getValue().getContent());
+            generator.writeEndObject();
+        }
+
+        generator.writeEndArray();
+        if(next != null) {
+            generator.writeNumberField("next", next);
+        }
+        if(previous != null) {
+            generator.writeNumberField("previous", previous);
+        }
+        generator.writeEndObject();
+    }
+
+    @Override
+    public String toString() {
+        StringWriter writer = new StringWriter();
+        try(JsonGenerator generator = MessageJsonWriter.JSON.createGenerator(writer)) {
+            write(generator);
+        } catch (IOException e) {
+            // StringWriter does not throw
+            throw new IllegalStateException(e);
+        }
+        return writer.toString();
+    }
+}
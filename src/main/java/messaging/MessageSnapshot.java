@@ -0,0 +1,258 @@
+package messaging;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Compact binary snapshot of the messages in a MessageDao. The file is
+ *
+ *     int magic | int version | long sequence | long counter
+ *     { long id | long version | int length | author | int length | content }*
+ *     long 0 | long count | long crc32
+ *
+ * where `sequence` is the last logged mutation the snapshot is known to
+ * include, strings are UTF-8 and the checksum covers everything before it.
+ * Version 1 snapshots have no message versions, their messages get
+ * `sequence` as version instead.
+ * Snapshots are loaded through memory-mapped windows of the file, so they
+ * are read without copying through an intermediate stream buffer.
+ */
+public class MessageSnapshot {
+
+    /**
+     * Receives the messages of a snapshot being loaded
+     */
+    public interface Loader {
+        void restore(long id, Message message);
+    }
+
+    private static final int MAGIC = 0x4d534753;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8;
+    private static final int TRAILER_SIZE = 8 + 8 + 8;
+    // Size of the mapped window, entries are never larger than this
+    private static final int WINDOW_SIZE = 1 << 28;
+
+    private final long sequence;
+    private final long counter;
+    private final long count;
+
+    private MessageSnapshot(long sequence, long counter, long count) {
+        this.sequence = sequence;
+        this.counter = counter;
+        this.count = count;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getCounter() {
+        return counter;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Writes a snapshot of the messages in `dao` to `file`, replacing any
+     * previous snapshot only once the new one is completely on disk. The
+     * messages are read without blocking writers, so the snapshot may also
+     * include some mutations made after `sequence`.
+     */
+    public static MessageSnapshot write(Path file, long sequence, long counter,
+                                        MessageDao dao) throws IOException {
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        long count = 0;
+
+        try(FileOutputStream stream = new FileOutputStream(temporary.toFile())) {
+            DataOutputStream output = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(stream, 1 << 20), crc));
+
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(sequence);
+            output.writeLong(counter);
+
+            for(Long id : dao.getIds()) {
+                Message message = dao.find(id);
+
+                // Skip ids removed since the iterator passed them
+                if(message == null) {
+                    continue;
+                }
+
+                byte[] author = message.getAuthor().getBytes(StandardCharsets.UTF_8);
+                byte[] content = message.getContent().getBytes(StandardCharsets.UTF_8);
+
+                output.writeLong(id);
+                output.writeLong(message.getVersion());
+                output.writeInt(author.length);
+                output.write(author);
+                output.writeInt(content.length);
+                output.write(content);
+                count++;
+            }
+
+            output.writeLong(0);
+            output.writeLong(count);
+            output.writeLong(crc.getValue());
+            output.flush();
+
+            stream.getFD().sync();
+        }
+
+        Files.move(temporary, file,
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(file.getParent());
+
+        return new MessageSnapshot(sequence, counter, count);
+    }
+
+    /**
+     * Passes every message in the snapshot at `file` to `loader`
+     */
+    public static MessageSnapshot load(Path file, Loader loader) throws IOException {
+
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+            long size = channel.size();
+            if(size < HEADER_SIZE + TRAILER_SIZE) {
+                throw new IOException("Snapshot " + file + " is truncated");
+            }
+
+            verifyChecksum(channel, size, file);
+
+            Window window = new Window(channel, size - 8);
+
+            if(window.buffer(HEADER_SIZE).getInt() != MAGIC) {
+                throw new IOException(file + " is not a message snapshot");
+            }
+            int version = window.buffer(4).getInt();
+            if(version != 1 && version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            long sequence = window.buffer(8).getLong();
+            long counter = window.buffer(8).getLong();
+
+            byte[] scratch = new byte[1024];
+            long count = 0;
+
+            while(true) {
+                long id = window.buffer(8).getLong();
+                if(id == 0) {
+                    break;
+                }
+                long messageVersion = version == 1 ? sequence : window.buffer(8).getLong();
+
+                int length = window.buffer(4).getInt();
+                scratch = window.read(length, scratch);
+                String author = new String(scratch, 0, length, StandardCharsets.UTF_8);
+
+                length = window.buffer(4).getInt();
+                scratch = window.read(length, scratch);
+                String content = new String(scratch, 0, length, StandardCharsets.UTF_8);
+
+                loader.restore(id, new Message(author, content, messageVersion));
+                count++;
+            }
+
+            if(window.buffer(8).getLong() != count) {
+                throw new IOException("Snapshot " + file + " is inconsistent");
+            }
+
+            return new MessageSnapshot(sequence, counter, count);
+        }
+    }
+
+    private static void verifyChecksum(FileChannel channel, long size, Path file) throws IOException {
+
+        CRC32 crc = new CRC32();
+
+        for(long position = 0; position < size - 8; position += WINDOW_SIZE) {
+            long length = Math.min(WINDOW_SIZE, size - 8 - position);
+            crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+        }
+
+        MappedByteBuffer trailer = channel.map(FileChannel.MapMode.READ_ONLY, size - 8, 8);
+        if(trailer.getLong() != crc.getValue()) {
+            throw new IOException("Snapshot " + file + " is corrupt");
+        }
+    }
+
+    private static void syncDirectory(Path directory) {
+
+        try(FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not supported on every platform, the rename itself is still atomic
+        }
+    }
+
+    /**
+     * Sequential reader over a file through a sliding memory-mapped window,
+     * so snapshots larger than a single mapping can be read
+     */
+    private static class Window {
+
+        private final FileChannel channel;
+        private final long limit;
+        private long offset;
+        private MappedByteBuffer mapped;
+
+        private Window(FileChannel channel, long limit) {
+            this.channel = channel;
+            this.limit = limit;
+        }
+
+        /**
+         * Returns the mapped buffer positioned at the next `length` bytes
+         */
+        private MappedByteBuffer buffer(int length) throws IOException {
+
+            if(mapped == null || mapped.remaining() < length) {
+                long position = mapped == null ? 0 : offset + mapped.position();
+
+                if(length < 0 || position + length > limit) {
+                    throw new IOException("Snapshot is truncated");
+                }
+
+                offset = position;
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(WINDOW_SIZE, limit - position));
+            }
+
+            return mapped;
+        }
+
+        /**
+         * Copies the next `length` bytes into `scratch`, growing it if needed
+         */
+        private byte[] read(int length, byte[] scratch) throws IOException {
+
+            MappedByteBuffer buffer = buffer(length);
+
+            if(scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(scratch, 0, length);
+
+            return scratch;
+        }
+    }
+}
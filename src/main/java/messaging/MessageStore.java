@@ -0,0 +1,27 @@
+package messaging;
+
+/**
+ * Storage of messages by id, used by MessageDao. Implementations must be
+ * safe for concurrent readers alongside a single writer at a time.
+ */
+public interface MessageStore {
+
+    /**
+     * Returns the message with `id`, or null if there is none
+     */
+    Message get(long id);
+
+    boolean contains(long id);
+
+    /**
+     * Stores `message` under `id`, replacing any previous message
+     */
+    void put(long id, Message message);
+
+    /**
+     * Removes the message with `id`, returning false if there was none
+     */
+    boolean remove(long id);
+
+    void clear();
+}
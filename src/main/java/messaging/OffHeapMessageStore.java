@@ -0,0 +1,264 @@
+package messaging;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Keeps message authors and contents as UTF-8 bytes in direct ByteBuffer
+ * slabs outside the Java heap, so millions of messages do not add to
+ * garbage collection work. Only a primitive id-to-address index lives on
+ * the heap, and a Message is created on every read.
+ *
+ * Each message is stored as
+ *
+ *     long version | int author length | int content length | author | content
+ *
+ * in a block rounded up to a size class. Blocks freed by update or remove
+ * are kept in per-class free lists and reused by later messages of the same
+ * class. Reads are optimistic and retried under a read lock only if a
+ * write happened concurrently.
+ */
+public class OffHeapMessageStore implements MessageStore {
+
+    private static final long MISSING = -1;
+    private static final int RECORD_HEADER = 16;
+    // Blocks up to SMALL_LIMIT are sized in steps of SMALL_STEP, larger ones in powers of two
+    private static final int SMALL_STEP = 32;
+    private static final int SMALL_LIMIT = 4096;
+    private static final int SMALL_CLASSES = SMALL_LIMIT / SMALL_STEP;
+
+    private final int slabSize;
+    private final StampedLock lock = new StampedLock();
+
+    // All fields below are guarded by `lock`
+    private final LongLongMap index = new LongLongMap(1024);
+    private ByteBuffer[] slabs = new ByteBuffer[0];
+    private int top;
+    private long[][] freeBlocks = new long[SMALL_CLASSES + 32][];
+    private int[] freeCounts = new int[SMALL_CLASSES + 32];
+
+    public OffHeapMessageStore(int slabSize) {
+        if(slabSize < SMALL_LIMIT) {
+            throw new IllegalArgumentException("Slab size must be at least " + SMALL_LIMIT);
+        }
+        this.slabSize = slabSize;
+    }
+
+    @Override
+    public Message get(long id) {
+
+        byte[] record = null;
+        long stamp = lock.tryOptimisticRead();
+
+        if(stamp != 0) {
+            try {
+                record = read(id);
+            } catch (RuntimeException e) {
+                // Concurrently modified, retried below under the read lock
+                stamp = 0;
+            }
+        }
+
+        if( ! lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                record = read(id);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        return record == null ? null : decode(record);
+    }
+
+    @Override
+    public boolean contains(long id) {
+
+        boolean contains = false;
+        long stamp = lock.tryOptimisticRead();
+
+        if(stamp != 0) {
+            try {
+                contains = index.get(id, MISSING) != MISSING;
+            } catch (RuntimeException e) {
+                // Concurrently resized, retried below under the read lock
+                stamp = 0;
+            }
+        }
+
+        if( ! lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                contains = index.get(id, MISSING) != MISSING;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        return contains;
+    }
+
+    @Override
+    public void put(long id, Message message) {
+
+        byte[] author = message.getAuthor().getBytes(StandardCharsets.UTF_8);
+        byte[] content = message.getContent().getBytes(StandardCharsets.UTF_8);
+        int size = RECORD_HEADER + author.length + content.length;
+
+        long stamp = lock.writeLock();
+        try {
+            long address = allocate(size);
+            ByteBuffer block = block(address);
+            block.putLong(message.getVersion());
+            block.putInt(author.length);
+            block.putInt(content.length);
+            block.put(author);
+            block.put(content);
+
+            long previous = index.put(id, address, MISSING);
+            if(previous != MISSING) {
+                free(previous);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean remove(long id) {
+
+        long stamp = lock.writeLock();
+        try {
+            long address = index.remove(id, MISSING);
+            if(address == MISSING) {
+                return false;
+            }
+            free(address);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void clear() {
+
+        long stamp = lock.writeLock();
+        try {
+            index.clear();
+            // Dropped slabs are released once they are garbage collected
+            slabs = new ByteBuffer[0];
+            top = 0;
+            Arrays.fill(freeCounts, 0);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Copies the stored record of `id`, or returns null if there is none.
+     * May see inconsistent state unless the caller holds the lock or
+     * validates a stamp afterwards.
+     */
+    private byte[] read(long id) {
+
+        long address = index.get(id, MISSING);
+        if(address == MISSING) {
+            return null;
+        }
+
+        ByteBuffer block = block(address);
+        int length = RECORD_HEADER + block.getInt(block.position() + 8) + block.getInt(block.position() + 12);
+
+        if(length < RECORD_HEADER || length > block.remaining()) {
+            throw new IllegalStateException("Block at " + address + " is being modified");
+        }
+
+        byte[] record = new byte[length];
+        block.get(record);
+        return record;
+    }
+
+    private static Message decode(byte[] record) {
+
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        long version = buffer.getLong();
+        int authorLength = buffer.getInt();
+        int contentLength = buffer.getInt();
+
+        String author = new String(record, RECORD_HEADER, authorLength, StandardCharsets.UTF_8);
+        String content = new String(record, RECORD_HEADER + authorLength, contentLength,
+                StandardCharsets.UTF_8);
+
+        return new Message(author, content, version);
+    }
+
+    /**
+     * Returns a buffer positioned at the block at `address`
+     */
+    private ByteBuffer block(long address) {
+
+        ByteBuffer block = slabs[(int) (address >>> 32)].duplicate();
+        block.position((int) address);
+        return block;
+    }
+
+    private long allocate(int size) {
+
+        int sizeClass = sizeClass(size);
+        int blockSize = blockSize(sizeClass);
+
+        if(blockSize > slabSize) {
+            throw new IllegalArgumentException("Message of " + size +
+                    " bytes does not fit in a slab of " + slabSize + " bytes");
+        }
+
+        if(freeCounts[sizeClass] > 0) {
+            return freeBlocks[sizeClass][--freeCounts[sizeClass]];
+        }
+
+        if(slabs.length == 0 || top + blockSize > slabSize) {
+            slabs = Arrays.copyOf(slabs, slabs.length + 1);
+            slabs[slabs.length - 1] = ByteBuffer.allocateDirect(slabSize);
+            top = 0;
+        }
+
+        long address = ((long) (slabs.length - 1) << 32) | top;
+        top += blockSize;
+        return address;
+    }
+
+    private void free(long address) {
+
+        ByteBuffer block = block(address);
+        int size = RECORD_HEADER + block.getInt(block.position() + 8) + block.getInt(block.position() + 12);
+        int sizeClass = sizeClass(size);
+
+        long[] blocks = freeBlocks[sizeClass];
+        if(blocks == null) {
+            blocks = freeBlocks[sizeClass] = new long[16];
+        } else if(freeCounts[sizeClass] == blocks.length) {
+            blocks = freeBlocks[sizeClass] = Arrays.copyOf(blocks, blocks.length * 2);
+        }
+        blocks[freeCounts[sizeClass]++] = address;
+    }
+
+    private static int sizeClass(int size) {
+
+        if(size <= SMALL_LIMIT) {
+            return (size + SMALL_STEP - 1) / SMALL_STEP - 1;
+        }
+        // Number of doublings above SMALL_LIMIT needed to fit `size`
+        return SMALL_CLASSES + (32 - Integer.numberOfLeadingZeros((size - 1) / SMALL_LIMIT));
+    }
+
+    private static int blockSize(int sizeClass) {
+
+        if(sizeClass < SMALL_CLASSES) {
+            return (sizeClass + 1) * SMALL_STEP;
+        }
+        return SMALL_LIMIT << (sizeClass - SMALL_CLASSES);
+    }
+}
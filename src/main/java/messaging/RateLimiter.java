@@ -0,0 +1,102 @@
+package messaging;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token buckets, one per key, using the generic cell rate
+ * algorithm. Each bucket is a single theoretical arrival time that moves
+ * forward by one emission interval per request and is only compared with
+ * the clock, so buckets refill lazily and a request costs one map lookup
+ * and one compare-and-set.
+ *
+ * A bucket whose arrival time has passed is full, and the same as having
+ * no bucket at all, so idle buckets are dropped every minute.
+ */
+public class RateLimiter {
+
+    private static final long SWEEP_INTERVAL = TimeUnit.MINUTES.toNanos(1);
+
+    // Nanoseconds between requests at the sustained rate, 0 if unlimited
+    private final long interval;
+    // How far ahead of the clock a bucket may run, which allows `burst`
+    // requests at once
+    private final long tolerance;
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+
+    /**
+     * @param perSecond sustained number of requests per second allowed for
+     *                  each key, 0 or less for no limit
+     * @param burst number of requests allowed at once
+     */
+    public RateLimiter(double perSecond, int burst) {
+        this.interval = perSecond > 0 ? Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / perSecond)) : 0;
+        this.tolerance = interval * Math.max(1, burst);
+    }
+
+    /**
+     * Creates a RateLimiter configured by the `messaging.rateLimit.<name>`
+     * (requests per second) and `messaging.rateLimit.<name>.burst` system
+     * properties
+     */
+    public static RateLimiter fromSystemProperties(String name, double perSecond, int burst) {
+
+        String rate = System.getProperty("messaging.rateLimit." + name);
+
+        return new RateLimiter(rate == null ? perSecond : Double.parseDouble(rate),
+                Integer.getInteger("messaging.rateLimit." + name + ".burst", burst));
+    }
+
+    /**
+     * Takes a token from the bucket of `key`. Returns 0 if there was one,
+     * or else the number of nanoseconds until there will be.
+     */
+    public long acquire(String key) {
+        return interval == 0 ? 0 : acquire(key, System.nanoTime());
+    }
+
+    long acquire(String key, long now) {
+
+        AtomicLong arrival = buckets.get(key);
+
+        if(arrival == null) {
+            arrival = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        }
+
+        while(true) {
+            long current = arrival.get();
+            long next = (current - now > 0 ? current : now) + interval;
+            long wait = next - now - tolerance;
+
+            if(wait > 0) {
+                return wait;
+            }
+
+            if(arrival.compareAndSet(current, next)) {
+                break;
+            }
+        }
+
+        long last = lastSweep.get();
+        if(now - last > SWEEP_INTERVAL && lastSweep.compareAndSet(last, now)) {
+            evictIdle(now);
+        }
+
+        return 0;
+    }
+
+    /**
+     * Drops the buckets that are full at `now`. A bucket taken from just
+     * before it is dropped forgets that request, which only errs on the
+     * side of allowing it.
+     */
+    void evictIdle(long now) {
+        buckets.values().removeIf(arrival -> arrival.get() - now <= 0);
+    }
+
+    int size() {
+        return buckets.size();
+    }
+}
@@ -0,0 +1,538 @@
+package messaging;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Inverted index from terms to the ids of the messages containing them,
+ * kept up to date as messages are added, updated and removed.
+ *
+ * Message content is split into lower-cased runs of letters and digits.
+ * Each term has a posting list of (id, term frequency) pairs in ascending
+ * id order, stored in blocks of up to BLOCK_SIZE entries that are
+ * delta and varint encoded. Appending a new id touches only the last block,
+ * other changes only re-encode the block holding the id, and queries skip
+ * whole blocks by their last id while intersecting lists.
+ *
+ * Blocks are never changed once in a list, so a search only holds the read
+ * lock while copying the block lists of its terms, not while scanning them.
+ * Callers holding a lock of their own can tokenize messages before taking
+ * it with Terms.of() and pass the terms in.
+ */
+public class SearchIndex {
+
+    /**
+     * A matching message id and its relevance score
+     */
+    public static class Hit {
+
+        private final long id;
+        private final double score;
+
+        private Hit(long id, double score) {
+            this.id = id;
+            this.score = score;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public double getScore() {
+            return score;
+        }
+    }
+
+    /**
+     * The terms of a message content, with their frequencies
+     */
+    public static class Terms {
+
+        private final String content;
+        private final Map<String, Integer> frequencies;
+
+        private Terms(String content) {
+            this.content = content;
+            this.frequencies = terms(content);
+        }
+
+        /**
+         * Returns the terms of `message`, or null if it is null
+         */
+        public static Terms of(Message message) {
+            return message == null ? null : new Terms(message.getContent());
+        }
+
+        /**
+         * Returns the term frequencies of `message`, taken from `terms` if
+         * they are of the same content
+         */
+        private static Map<String, Integer> frequencies(Message message, Terms terms) {
+            return terms != null && terms.content.equals(message.getContent())
+                    ? terms.frequencies
+                    : terms(message.getContent());
+        }
+    }
+
+    private static final int BLOCK_SIZE = 128;
+    private static final int MAX_TERM_LENGTH = 64;
+
+    // Best hits first, newer messages first among equal scores
+    private static final Comparator<Hit> RANKING = Comparator
+            .comparingDouble(Hit::getScore).reversed()
+            .thenComparing(Comparator.comparingLong(Hit::getId).reversed());
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Guarded by `lock`
+    private final Map<String, PostingList> postings = new HashMap<>();
+    private long documents;
+
+    /**
+     * Indexes `message` under `id`, replacing `previous` if it was
+     * already indexed under that id
+     */
+    public void add(long id, Message message, Message previous) {
+        add(id, message, null, previous, null);
+    }
+
+    /**
+     * Same as add(id, message, previous), using `terms` and `previousTerms`
+     * from Terms.of() instead of tokenizing again when they are of the same
+     * contents. Either may be null.
+     */
+    public void add(long id, Message message, Terms terms, Message previous, Terms previousTerms) {
+
+        Map<String, Integer> frequencies = Terms.frequencies(message, terms);
+        Map<String, Integer> previousFrequencies = previous == null
+                ? Collections.<String, Integer>emptyMap()
+                : Terms.frequencies(previous, previousTerms);
+
+        lock.writeLock().lock();
+        try {
+            for(String term : previousFrequencies.keySet()) {
+                if( ! frequencies.containsKey(term)) {
+                    removePosting(term, id);
+                }
+            }
+            for(Map.Entry<String, Integer> term : frequencies.entrySet()) {
+                postings.computeIfAbsent(term.getKey(), key -> new PostingList())
+                        .add(id, term.getValue());
+            }
+            if(previous == null) {
+                documents++;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes `message`, indexed under `id`, from the index
+     */
+    public void remove(long id, Message message) {
+        remove(id, message, null);
+    }
+
+    /**
+     * Same as remove(id, message), using `terms` from Terms.of() instead of
+     * tokenizing again when they are of the same content
+     */
+    public void remove(long id, Message message, Terms terms) {
+
+        Map<String, Integer> frequencies = Terms.frequencies(message, terms);
+
+        lock.writeLock().lock();
+        try {
+            for(String term : frequencies.keySet()) {
+                removePosting(term, id);
+            }
+            documents--;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            documents = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns up to `limit` ids of messages containing every term of
+     * `query`, best matches first. Matches are scored by the sum over the
+     * query terms of (1 + ln tf) * ln(1 + N / df).
+     */
+    public List<Hit> search(String query, int limit) {
+
+        Set<String> terms = terms(query).keySet();
+
+        if(terms.isEmpty() || limit < 1) {
+            return Collections.emptyList();
+        }
+
+        Cursor[] cursors = new Cursor[terms.size()];
+        int i = 0;
+
+        lock.readLock().lock();
+        try {
+            for(String term : terms) {
+                PostingList list = postings.get(term);
+                if(list == null) {
+                    return Collections.emptyList();
+                }
+                cursors[i++] = new Cursor(list.snapshot(), Math.log(1 + (double) documents / list.size));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // Drive the intersection from the rarest term
+        Arrays.sort(cursors, Comparator.comparingInt(cursor -> cursor.list.size));
+
+        PriorityQueue<Hit> best = new PriorityQueue<>(limit + 1, RANKING.reversed());
+        Cursor lead = cursors[0];
+        long candidate = lead.advance(Long.MIN_VALUE);
+
+        while(candidate != Cursor.END) {
+            long next = candidate;
+
+            for(int c = 1; c < cursors.length && next == candidate; c++) {
+                next = cursors[c].advance(candidate);
+            }
+
+            if(next == Cursor.END) {
+                break;
+            }
+
+            if(next == candidate) {
+                double score = 0;
+                for(Cursor cursor : cursors) {
+                    score += (1 + Math.log(cursor.tf())) * cursor.idf;
+                }
+                best.add(new Hit(candidate, score));
+                if(best.size() > limit) {
+                    best.poll();
+                }
+                next = candidate + 1;
+            }
+
+            candidate = lead.advance(next);
+        }
+
+        List<Hit> hits = new ArrayList<>(best);
+        hits.sort(RANKING);
+        return hits;
+    }
+
+    private void removePosting(String term, long id) {
+
+        PostingList list = postings.get(term);
+
+        if(list != null && list.remove(id) && list.size == 0) {
+            postings.remove(term);
+        }
+    }
+
+    /**
+     * Splits `text` into lower-cased terms with their frequencies
+     */
+    static Map<String, Integer> terms(String text) {
+
+        Map<String, Integer> terms = new HashMap<>();
+        int length = text.length();
+        int start = -1;
+
+        for(int i = 0; i <= length; i++) {
+            boolean termChar = i < length && Character.isLetterOrDigit(text.charAt(i));
+
+            if(termChar && start < 0) {
+                start = i;
+            } else if( ! termChar && start >= 0) {
+                if(i - start <= MAX_TERM_LENGTH) {
+                    terms.merge(text.substring(start, i).toLowerCase(Locale.ROOT), 1, Integer::sum);
+                }
+                start = -1;
+            }
+        }
+
+        return terms;
+    }
+
+    /**
+     * Ids containing one term, with their term frequencies
+     */
+    private static class PostingList {
+
+        private final List<Block> blocks = new ArrayList<>();
+        private int size;
+
+        private void add(long id, int tf) {
+
+            Block last = blocks.isEmpty() ? null : blocks.get(blocks.size() - 1);
+
+            if(last == null || id > last.lastId) {
+                if(last == null || last.count >= BLOCK_SIZE) {
+                    blocks.add(Block.EMPTY.append(id, tf));
+                } else {
+                    blocks.set(blocks.size() - 1, last.append(id, tf));
+                }
+                size++;
+                return;
+            }
+
+            int index = blockIndex(id);
+            Block block = blocks.get(index);
+            long[] ids = new long[block.count + 1];
+            int[] tfs = new int[block.count + 1];
+            block.decode(ids, tfs);
+
+            int position = Arrays.binarySearch(ids, 0, block.count, id);
+            if(position >= 0) {
+                tfs[position] = tf;
+                blocks.set(index, Block.encode(ids, tfs, 0, block.count));
+                return;
+            }
+
+            position = -position - 1;
+            System.arraycopy(ids, position, ids, position + 1, block.count - position);
+            System.arraycopy(tfs, position, tfs, position + 1, block.count - position);
+            ids[position] = id;
+            tfs[position] = tf;
+            size++;
+
+            int count = block.count + 1;
+            if(count <= 2 * BLOCK_SIZE) {
+                blocks.set(index, Block.encode(ids, tfs, 0, count));
+            } else {
+                blocks.set(index, Block.encode(ids, tfs, 0, count / 2));
+                blocks.add(index + 1, Block.encode(ids, tfs, count / 2, count));
+            }
+        }
+
+        private boolean remove(long id) {
+
+            if(blocks.isEmpty()) {
+                return false;
+            }
+
+            int index = blockIndex(id);
+            Block block = blocks.get(index);
+            if(id > block.lastId) {
+                return false;
+            }
+
+            long[] ids = new long[block.count];
+            int[] tfs = new int[block.count];
+            block.decode(ids, tfs);
+
+            int position = Arrays.binarySearch(ids, id);
+            if(position < 0) {
+                return false;
+            }
+
+            System.arraycopy(ids, position + 1, ids, position, block.count - position - 1);
+            System.arraycopy(tfs, position + 1, tfs, position, block.count - position - 1);
+            size--;
+
+            if(block.count == 1) {
+                blocks.remove(index);
+            } else {
+                blocks.set(index, Block.encode(ids, tfs, 0, block.count - 1));
+            }
+            return true;
+        }
+
+        /**
+         * Returns a copy of this list that later changes do not affect,
+         * which only copies the references to its unchanging blocks
+         */
+        private PostingList snapshot() {
+            PostingList snapshot = new PostingList();
+            snapshot.blocks.addAll(blocks);
+            snapshot.size = size;
+            return snapshot;
+        }
+
+        /**
+         * Index of the block that holds or would hold `id`
+         */
+        private int blockIndex(long id) {
+
+            int low = 0;
+            int high = blocks.size() - 1;
+
+            while(low < high) {
+                int middle = (low + high) >>> 1;
+                if(blocks.get(middle).lastId < id) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+
+            return low;
+        }
+    }
+
+    /**
+     * Up to 2 * BLOCK_SIZE postings, each written as varint(id - previous id)
+     * and varint(tf), where the first entry's previous id is `firstId`.
+     * Immutable, appending returns a new Block that may share `data` but
+     * only writes past the bytes this one uses.
+     */
+    private static class Block {
+
+        private static final Block EMPTY = new Block(0, 0, 0, new byte[16], 0);
+
+        private final long firstId;
+        private final long lastId;
+        private final int count;
+        private final byte[] data;
+        private final int length;
+
+        private Block(long firstId, long lastId, int count, byte[] data, int length) {
+            this.firstId = firstId;
+            this.lastId = lastId;
+            this.count = count;
+            this.data = data;
+            this.length = length;
+        }
+
+        /**
+         * Returns this block followed by `id`, which must be above lastId
+         */
+        private Block append(long id, int tf) {
+
+            // Only the block last in its list is appended to, and it is
+            // replaced by the result, but EMPTY is shared by every list
+            byte[] bytes = this == EMPTY ? new byte[16] : data;
+
+            if(length + 15 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + 15));
+            }
+
+            int end = writeVarint(bytes, length, count == 0 ? 0 : id - lastId);
+            end = writeVarint(bytes, end, tf);
+            return new Block(count == 0 ? id : firstId, id, count + 1, bytes, end);
+        }
+
+        private void decode(long[] ids, int[] tfs) {
+
+            long id = firstId;
+            int position = 0;
+
+            for(int i = 0; i < count; i++) {
+                long value = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[position++];
+                    value |= (long) (b & 0x7f) << shift;
+                    shift += 7;
+                } while(b < 0);
+                id += value;
+                ids[i] = id;
+
+                int tf = 0;
+                shift = 0;
+                do {
+                    b = data[position++];
+                    tf |= (b & 0x7f) << shift;
+                    shift += 7;
+                } while(b < 0);
+                tfs[i] = tf;
+            }
+        }
+
+        private static Block encode(long[] ids, int[] tfs, int from, int to) {
+
+            byte[] data = new byte[(to - from) * 15];
+            int length = 0;
+
+            for(int i = from; i < to; i++) {
+                length = writeVarint(data, length, i == from ? 0 : ids[i] - ids[i - 1]);
+                length = writeVarint(data, length, tfs[i]);
+            }
+
+            return new Block(ids[from], ids[to - 1], to - from, Arrays.copyOf(data, length), length);
+        }
+
+        private static int writeVarint(byte[] data, int position, long value) {
+
+            while((value & ~0x7fL) != 0) {
+                data[position++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            data[position++] = (byte) value;
+            return position;
+        }
+    }
+
+    /**
+     * Forward-only iterator over a posting list
+     */
+    private static class Cursor {
+
+        private static final long END = Long.MAX_VALUE;
+
+        private final PostingList list;
+        private final double idf;
+        private int block = -1;
+        private int position;
+        private long[] ids = new long[2 * BLOCK_SIZE];
+        private int[] tfs = new int[2 * BLOCK_SIZE];
+
+        private Cursor(PostingList list, double idf) {
+            this.list = list;
+            this.idf = idf;
+        }
+
+        /**
+         * Moves to the first id not below `target` and returns it, or END
+         * when there is none
+         */
+        private long advance(long target) {
+
+            if(block >= list.blocks.size()) {
+                return END;
+            }
+
+            if(block < 0 || target > list.blocks.get(block).lastId) {
+                int next = Math.max(block + 1, target == Long.MIN_VALUE ? 0 : list.blockIndex(target));
+                if(next >= list.blocks.size() || target > list.blocks.get(next).lastId) {
+                    block = list.blocks.size();
+                    return END;
+                }
+                block = next;
+                list.blocks.get(block).decode(ids, tfs);
+                position = 0;
+            }
+
+            Block current = list.blocks.get(block);
+            while(ids[position] < target) {
+                position++;
+            }
+            return position < current.count ? ids[position] : END;
+        }
+
+        private int tf() {
+            return tfs[position];
+        }
+    }
+}
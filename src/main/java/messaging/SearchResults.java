@@ -0,0 +1,66 @@
+package messaging;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SearchResults {
+
+    private final List<Long> ids = new ArrayList<>();
+    private final List<Double> scores = new ArrayList<>();
+    private final List<Message> messages = new ArrayList<>();
+
+    void add(long id, double score, Message message) {
+        ids.add(id);
+        scores.add(score);
+        messages.add(message);
+    }
+
+    /**
+     * Ids of the matching messages, best match first
+     */
+    public List<Long> getIds() {
+        return ids;
+    }
+
+    public List<Message> getMessages() {
+        return messages;
+    }
+
+    /**
+     * Writes the Json representation of these results to `generator`:
+     *
+     *     {"results":[{"id":1,"author":...,"content":...,"score":1.5}]}
+     */
+    public void write(JsonGenerator generator) throws IOException {
+
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("results");
+
+        for(int i = 0; i < ids.size(); i++) {
+            generator.writeStartObject();
+            generator.writeNumberField("id", ids.get(i));
+            generator.writeStringField("author", messages.get(i).getAuthor());
+            generator.writeStringField("content", messages.get(i).getContent());
+            generator.writeNumberField("score", scores.get(i));
+            generator.writeEndObject();
+        }
+
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    @Override
+    public String toString() {
+        StringWriter writer = new StringWriter();
+        try(JsonGenerator generator = MessageJsonWriter.JSON.createGenerator(writer)) {
+            write(generator);
+        } catch (IOException e) {
+            // StringWriter does not throw
+            throw new IllegalStateException(e);
+        }
+        return writer.toString();
+    }
+}
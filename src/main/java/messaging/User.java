@@ -0,0 +1,38 @@
+package messaging;
+
+import java.security.Principal;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * An authenticated user and its roles
+ */
+public class User implements Principal {
+
+    private final String name;
+    private final Set<String> roles;
+
+    public User(String name, Set<String> roles) {
+        this.name = name;
+        this.roles = Collections.unmodifiableSet(new HashSet<>(roles));
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    public Set<String> getRoles() {
+        return roles;
+    }
+
+    public boolean hasRole(String role) {
+        return roles.contains(role);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,14 @@
+package messaging;
+
+/**
+ * Source of the users allowed to use the application
+ */
+public interface UserStore {
+
+    /**
+     * Returns the user named `username` if `password` is its password, or
+     * null otherwise. Passwords are checked against slow salted hashes, so
+     * callers should avoid checking the same credentials repeatedly.
+     */
+    User authenticate(String username, String password);
+}
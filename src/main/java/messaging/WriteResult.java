@@ -0,0 +1,40 @@
+package messaging;
+
+/**
+ * Outcome of a conditional MessageDao write, reported without throwing so
+ * that expected failures cost no more than a successful write
+ */
+public class WriteResult {
+
+    public enum Status {
+        OK,
+        NOT_FOUND,
+        // The message belongs to another author
+        FORBIDDEN,
+        // The message does not have the expected version
+        CONFLICT
+    }
+
+    static final WriteResult NOT_FOUND = new WriteResult(Status.NOT_FOUND, null);
+
+    private final Status status;
+    private final Message message;
+
+    WriteResult(Status status, Message message) {
+        this.status = status;
+        this.message = message;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Returns the stored message after a successful replace, the message
+     * that was removed or left in place otherwise, and null when there was
+     * no message
+     */
+    public Message getMessage() {
+        return message;
+    }
+}
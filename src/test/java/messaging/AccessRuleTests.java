@@ -0,0 +1,54 @@
+package messaging;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import java.util.Collections;
+import javax.annotation.security.DenyAll;
+import javax.annotation.security.PermitAll;
+import javax.annotation.security.RolesAllowed;
+
+public class AccessRuleTests {
+
+    @RolesAllowed("ADMIN")
+    private static class Resource {
+
+        public void inherited() {
+        }
+
+        @RolesAllowed("USER")
+        public void users() {
+        }
+
+        @PermitAll
+        public void everyone() {
+        }
+
+        @DenyAll
+        public void nobody() {
+        }
+    }
+
+    private static AccessRule rule(String method) throws NoSuchMethodException {
+        return AccessRule.of(Resource.class.getMethod(method), Resource.class);
+    }
+
+    /**
+     * Rules should follow the method annotations, or the class annotations
+     * when the method has none
+     * @result each rule allows the annotated roles only
+     */
+    @Test
+    public void ruleShouldFollowMethodThenClassAnnotations() throws NoSuchMethodException {
+
+        User user = new User("linda", Collections.singleton("USER"));
+        User admin = new User("anna", Collections.singleton("ADMIN"));
+
+        assertTrue(rule("users").allows(user));
+        assertFalse(rule("users").allows(admin));
+        assertFalse(rule("inherited").allows(user));
+        assertTrue(rule("inherited").allows(admin));
+        assertTrue(rule("everyone").isPermitAll());
+        assertTrue(rule("nobody").isDenyAll());
+    }
+}
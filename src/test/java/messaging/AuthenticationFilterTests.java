@@ -0,0 +1,151 @@
+package messaging;
+
+import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.test.JerseyTest;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import javax.ws.rs.NotAuthorizedException;
+
+import static io.restassured.RestAssured.given;
+
+public class AuthenticationFilterTests extends JerseyTest {
+
+    // Need to set port as the tests run on a different port than
+    // the standard application
+    private static final int PORT = 9998;
+
+    private static final MessageDao messageDao = new MessageDao();
+
+    @Override
+    protected ResourceConfig configure() {
+        // Reads are unlimited, writes allow a burst of 3 and then one a minute
+        return new Application(messageDao, new AuthenticationFeature(FileUserStore.fromSystemProperties(),
+                new BoundedCache<>(100), new RateLimiter(0, 0), new RateLimiter(1 / 60.0, 3)));
+    }
+
+    @After
+    public void after() throws Exception {
+        super.tearDown();
+        messageDao.clear();
+    }
+
+    /**
+     * Requests of a known user should succeed, also when repeated, and
+     * messages should be posted as that user
+     * @result Status 201, message authored by the user
+     */
+    @Test
+    public void postShouldSucceedWith201AsAuthenticatedUserTest() {
+
+        for(int i = 0; i < 2; i++) {
+            given()
+                .port(PORT)
+                .auth()
+                .preemptive()
+                .basic("linda", "password")
+                .body("Hello")
+            .when()
+                .post("/message")
+            .then()
+                .statusCode(201);
+        }
+
+        Assert.assertEquals("linda", messageDao.get(1).getAuthor());
+        Assert.assertEquals("linda", messageDao.get(2).getAuthor());
+    }
+
+    /**
+     * Requests with a wrong password or malformed credentials should fail
+     * @result Status 401
+     */
+    @Test
+    public void getShouldFailWith401WhenCredentialsInvalidTest() {
+
+        given()
+            .port(PORT)
+            .auth()
+            .preemptive()
+            .basic("linda", "wrong")
+        .when()
+            .get("/message")
+        .then()
+            .statusCode(401);
+
+        given()
+            .port(PORT)
+            .header("Authorization", "Basic not-base64")
+        .when()
+            .get("/message")
+        .then()
+            .statusCode(401);
+
+        given()
+            .port(PORT)
+        .when()
+            .get("/message")
+        .then()
+            .statusCode(401);
+    }
+
+    /**
+     * Writes beyond the burst allowed for a user should be rejected, without
+     * affecting other users
+     * @result Status 429 with Retry-After for linda, 201 for anna
+     */
+    @Test
+    public void postShouldFailWith429WhenRateLimitExceededTest() {
+
+        for(int i = 0; i < 3; i++) {
+            given()
+                .port(PORT)
+                .auth()
+                .preemptive()
+                .basic("linda", "password")
+                .body("Hello")
+            .when()
+                .post("/message")
+            .then()
+                .statusCode(201);
+        }
+
+        given()
+            .port(PORT)
+            .auth()
+            .preemptive()
+            .basic("linda", "password")
+            .body("Hello")
+        .when()
+            .post("/message")
+        .then()
+            .statusCode(429)
+            .header("Retry-After", "60");
+
+        given()
+            .port(PORT)
+            .auth()
+            .preemptive()
+            .basic("anna", "password")
+            .body("Hello")
+        .when()
+            .post("/message")
+        .then()
+            .statusCode(201);
+    }
+
+    /**
+     * Without a user authenticated by the filter, getUser should not fall
+     * back to the Authorization header
+     * @result throws NotAuthorizedException with status 401
+     */
+    @Test
+    public void getUserShouldFailWith401WithoutPrincipalTest() {
+
+        try {
+            AuthenticationFilter.getUser(null);
+            Assert.fail("Expected NotAuthorizedException");
+        } catch (NotAuthorizedException e) {
+            Assert.assertEquals(401, e.getResponse().getStatus());
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package messaging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+import java.util.concurrent.TimeUnit;
+
+public class BoundedCacheTests {
+
+    /**
+     * get should return cached values until they are removed
+     * @result cached value, then null
+     */
+    @Test
+    public void getShouldReturnCachedValue() {
+
+        BoundedCache<String, String> cache = new BoundedCache<>(10);
+        cache.put("key", "value");
+
+        assertEquals("value", cache.get("key"));
+
+        cache.remove("key");
+
+        assertNull(cache.get("key"));
+    }
+
+    /**
+     * The cache should never hold more entries than its capacity, and keep
+     * the entry just added
+     * @result size stays at capacity
+     */
+    @Test
+    public void putShouldEvictWhenFull() {
+
+        BoundedCache<Integer, Integer> cache = new BoundedCache<>(100);
+
+        for(int i = 0; i < 1000; i++) {
+            cache.put(i, i);
+            assertEquals(Integer.valueOf(i), cache.get(i));
+        }
+
+        assertEquals(100, cache.size());
+    }
+
+    /**
+     * Entries should expire once their time to live has passed
+     * @result null after expiry
+     */
+    @Test
+    public void getShouldNotReturnExpiredValue() throws InterruptedException {
+
+        BoundedCache<String, String> cache = new BoundedCache<>(10, 50, TimeUnit.MILLISECONDS);
+        cache.put("key", "value");
+
+        assertEquals("value", cache.get("key"));
+
+        Thread.sleep(100);
+
+        assertNull(cache.get("key"));
+        assertEquals(0, cache.size());
+    }
+}
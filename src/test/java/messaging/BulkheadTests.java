@@ -0,0 +1,62 @@
+package messaging;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.Response;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class BulkheadTests {
+
+    /**
+     * Returns an AsyncResponse adding whatever it is resumed with to `resumed`
+     */
+    private static AsyncResponse asyncResponse(BlockingQueue<Object> resumed) {
+        return (AsyncResponse) Proxy.newProxyInstance(AsyncResponse.class.getClassLoader(),
+                new Class<?>[] {AsyncResponse.class}, (proxy, method, args) -> {
+                    if(method.getName().equals("resume")) {
+                        resumed.add(args[0]);
+                    }
+                    return method.getReturnType() == boolean.class ? true : null;
+                });
+    }
+
+    /**
+     * Requests beyond the threads and queue of a Bulkhead should be rejected
+     * right away, without affecting the ones admitted
+     * @result Status 503 while full, the request's response otherwise
+     */
+    @Test
+    public void submitShouldRejectWith503WhenFull() throws InterruptedException {
+
+        Bulkhead bulkhead = new Bulkhead("test", 1, 1, false);
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingQueue<Object> resumed = new LinkedBlockingQueue<>();
+
+        for(int i = 0; i < 2; i++) {
+            bulkhead.submit(asyncResponse(resumed), () -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return Response.ok().build();
+            });
+        }
+
+        bulkhead.submit(asyncResponse(resumed), () -> Response.ok().build());
+
+        assertEquals(503, ((Response) resumed.poll(5, TimeUnit.SECONDS)).getStatus());
+
+        release.countDown();
+
+        assertEquals(200, ((Response) resumed.poll(5, TimeUnit.SECONDS)).getStatus());
+        assertEquals(200, ((Response) resumed.poll(5, TimeUnit.SECONDS)).getStatus());
+
+        bulkhead.close();
+    }
+}
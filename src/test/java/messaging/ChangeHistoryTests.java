@@ -0,0 +1,72 @@
+package messaging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import java.util.List;
+
+public class ChangeHistoryTests {
+
+    private static MessageChange change(long sequence) {
+        return new MessageChange(MessageLog.Operation.ADD, sequence, sequence,
+                new Message("username", "hello" + sequence));
+    }
+
+    /**
+     * after should return the changes following a kept sequence number,
+     * limited to `limit`
+     * @result changes in sequence order
+     */
+    @Test
+    public void afterShouldReturnFollowingChanges() {
+
+        ChangeHistory history = new ChangeHistory(10);
+        for(long sequence = 1; sequence <= 5; sequence++) {
+            history.add(change(sequence));
+        }
+
+        List<MessageChange> changes = history.after(2, 2);
+
+        assertEquals(2, changes.size());
+        assertEquals(3, changes.get(0).getSequence());
+        assertEquals(4, changes.get(1).getSequence());
+        assertTrue(history.after(5, 10).isEmpty());
+        assertEquals(5, history.after(0, 10).size());
+    }
+
+    /**
+     * after should signal when changes were dropped or the sequence number
+     * is unknown
+     * @result returns null
+     */
+    @Test
+    public void afterShouldReturnNullWhenChangesAreNoLongerKept() {
+
+        ChangeHistory history = new ChangeHistory(3);
+        for(long sequence = 1; sequence <= 5; sequence++) {
+            history.add(change(sequence));
+        }
+
+        assertNull(history.after(1, 10));
+        assertEquals(3, history.after(2, 10).size());
+        assertNull(history.after(6, 10));
+        assertNull(history.after(-1, 10));
+    }
+
+    /**
+     * reset should continue after the given sequence number
+     * @result no changes kept, later changes follow the new sequence number
+     */
+    @Test
+    public void resetShouldContinueAfterSequence() {
+
+        ChangeHistory history = new ChangeHistory(3);
+        history.add(change(1));
+        history.reset(41);
+        history.add(change(42));
+
+        assertNull(history.after(1, 10));
+        assertEquals(42, history.after(41, 10).get(0).getSequence());
+    }
+}
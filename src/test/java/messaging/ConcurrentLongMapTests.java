@@ -0,0 +1,121 @@
+package messaging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class ConcurrentLongMapTests {
+
+    /**
+     * put should store values that get returns, and report the value it
+     * replaced
+     * @result returns stored and previous values
+     */
+    @Test
+    public void putShouldStoreAndReplaceValues() {
+
+        ConcurrentLongMap<String> map = new ConcurrentLongMap<>();
+
+        assertNull(map.put(1, "hello"));
+        assertEquals("hello", map.put(1, "another"));
+        assertEquals("another", map.get(1));
+        assertTrue(map.containsKey(1));
+        assertEquals(1, map.size());
+    }
+
+    /**
+     * remove should delete a key and leave other keys of the same probe
+     * run reachable
+     * @result removed key is gone, all others are still found
+     */
+    @Test
+    public void removeShouldKeepOtherKeysReachable() {
+
+        ConcurrentLongMap<Long> map = new ConcurrentLongMap<>(1, 4);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for(int i = 0; i < 20000; i++) {
+            long key = 1 + random.nextInt(5000);
+            if(random.nextBoolean()) {
+                map.put(key, key * 2);
+                expected.put(key, key * 2);
+            } else {
+                assertEquals(expected.remove(key), map.remove(key));
+            }
+        }
+
+        for(long key = 1; key <= 5000; key++) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+        assertEquals(expected.size(), map.size());
+    }
+
+    /**
+     * clear should remove every entry
+     * @result map is empty
+     */
+    @Test
+    public void clearShouldRemoveAllEntries() {
+
+        ConcurrentLongMap<String> map = new ConcurrentLongMap<>();
+        map.put(1, "hello");
+        map.put(2, "another");
+
+        map.clear();
+
+        assertFalse(map.containsKey(1));
+        assertEquals(0, map.size());
+    }
+
+    /**
+     * Readers should always see either no value or the value written for
+     * a key while other threads keep inserting and resizing
+     * @result every value read matches its key
+     */
+    @Test
+    public void concurrentReadersShouldSeeConsistentValues() throws InterruptedException {
+
+        ConcurrentLongMap<Long> map = new ConcurrentLongMap<>(4, 4);
+        int count = 200000;
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+
+        threads.add(new Thread(() -> {
+            for(long key = 1; key <= count; key++) {
+                map.put(key, key);
+            }
+        }));
+        for(int t = 0; t < 3; t++) {
+            threads.add(new Thread(() -> {
+                Random random = new Random();
+                for(int i = 0; i < count; i++) {
+                    long key = 1 + random.nextInt(count);
+                    Long value = map.get(key);
+                    if(value != null && value != key) {
+                        synchronized (errors) {
+                            errors.add(new AssertionError(key + " -> " + value));
+                        }
+                    }
+                }
+            }));
+        }
+
+        for(Thread thread : threads) {
+            thread.start();
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertEquals(count, map.size());
+    }
+}
@@ -0,0 +1,57 @@
+package messaging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class FileUserStoreTests {
+
+    private static FileUserStore store(String properties) throws IOException {
+        return FileUserStore.load(new ByteArrayInputStream(properties.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * authenticate should return the user with its roles only for the
+     * right password
+     * @result user for the right password, null otherwise
+     */
+    @Test
+    public void authenticateShouldCheckPassword() throws IOException {
+
+        FileUserStore store = store("linda = " + FileUserStore.hash("secret", 1000) + ":USER,ADMIN");
+
+        User user = store.authenticate("linda", "secret");
+
+        assertEquals("linda", user.getName());
+        assertTrue(user.hasRole("USER"));
+        assertTrue(user.hasRole("ADMIN"));
+        assertNull(store.authenticate("linda", "wrong"));
+        assertNull(store.authenticate("anna", "secret"));
+    }
+
+    /**
+     * The bundled users should be able to log in
+     * @result users linda and anna with the USER role
+     */
+    @Test
+    public void bundledUsersShouldAuthenticate() {
+
+        FileUserStore store = FileUserStore.fromSystemProperties();
+
+        assertTrue(store.authenticate("linda", "password").hasRole("USER"));
+        assertTrue(store.authenticate("anna", "password").hasRole("USER"));
+    }
+
+    /**
+     * Loading should reject entries that are not valid hashes
+     * @result throws IOException
+     */
+    @Test(expected = IOException.class)
+    public void loadShouldRejectInvalidEntries() throws IOException {
+        store("linda = password");
+    }
+}
@@ -0,0 +1,65 @@
+package messaging;
+
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import java.io.IOException;
+import java.net.URI;
+
+import static io.restassured.RestAssured.given;
+
+public class LauncherTests {
+
+    private static final int PORT = 9997;
+
+    private HttpServer server;
+
+    @After
+    public void after() {
+        server.shutdownNow();
+    }
+
+    /**
+     * The standalone server should serve the API at the same path as the
+     * WAR, with authentication enabled
+     * @result Status 201 and 200 for a known user, 401 without credentials
+     */
+    @Test
+    public void startShouldServeApplication() throws IOException {
+
+        Application application = new Application();
+        server = Launcher.start(URI.create("http://localhost:" + PORT + Launcher.CONTEXT_PATH),
+                application, 1, 2);
+
+        given()
+            .port(PORT)
+            .auth()
+            .preemptive()
+            .basic("linda", "password")
+            .body("Hello")
+        .when()
+            .post("/messaging/message")
+        .then()
+            .statusCode(201);
+
+        given()
+            .port(PORT)
+            .auth()
+            .preemptive()
+            .basic("linda", "password")
+        .when()
+            .get("/messaging/message")
+        .then()
+            .statusCode(200);
+
+        given()
+            .port(PORT)
+        .when()
+            .get("/messaging/message")
+        .then()
+            .statusCode(401);
+
+        Assert.assertEquals("linda", application.getMessageDao().get(1).getAuthor());
+    }
+}
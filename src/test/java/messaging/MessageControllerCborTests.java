@@ -0,0 +1,189 @@
+package messaging;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import io.restassured.response.Response;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.test.JerseyTest;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static io.restassured.RestAssured.given;
+
+public class MessageControllerCborTests extends JerseyTest {
+
+    // Need to set port as the tests run on a different port than
+    // the standard application
+    private static final int PORT = 9998;
+
+    private static final MessageDao messageDao = new MessageDao();
+
+    private static final ObjectMapper CBOR = new ObjectMapper(new CBORFactory());
+
+    @Override
+    protected ResourceConfig configure() {
+        return new Application(messageDao, TestUserStore.feature());
+    }
+
+    @After
+    public void after() throws Exception {
+        super.tearDown();
+        messageDao.clear();
+    }
+
+    /**
+     * get should return CBOR when it is accepted, with its own entity tag
+     * @result Status 200, CBOR body with the message, Vary: Accept
+     */
+    @Test
+    public void getShouldReturnCborWhenAcceptedTest() throws IOException {
+
+        messageDao.add(new Message("username", "hello"));
+
+        Response json = given()
+            .port(PORT)
+            .auth()
+            .preemptive()
+            .basic("username", "password")
+        .when()
+            .get("/message/1");
+
+        Response cbor = given()
+            .port(PORT)
+            .auth()
+            .preemptive()
+            .basic("username", "password")
+            .accept(MessageCborWriter.APPLICATION_CBOR)
+        .when()
+            .get("/message/1");
+
+        Assert.assertEquals(200, cbor.getStatusCode());
+        Assert.assertEquals(MessageCborWriter.APPLICATION_CBOR, cbor.getContentType());
+        Assert.assertEquals("Accept", cbor.getHeader("Vary"));
+        Assert.assertNotEquals(json.getHeader("ETag"), cbor.getHeader("ETag"));
+
+        JsonNode message = CBOR.readTree(cbor.asByteArray());
+        Assert.assertEquals("username", message.get("author").asText());
+        Assert.assertEquals("hello", message.get("content").asText());
+    }
+
+    /**
+     * Listing all messages, by ids and by page should return CBOR when it
+     * is accepted
+     * @result Status 200, CBOR bodies with the messages
+     */
+    @Test
+    public void getAllShouldReturnCborWhenAcceptedTest() throws IOException {
+
+        messageDao.add(new Message("username", "hello"));
+        messageDao.add(new Message("username", "again"));
+
+        JsonNode all = CBOR.readTree(getCbor("/message").asByteArray());
+        Assert.assertEquals("again", all.get("2").get("content").asText());
+
+        JsonNode byIds = CBOR.readTree(getCbor("/message?ids=1,3").asByteArray());
+        Assert.assertEquals(1, byIds.get("messages").get(0).get("id").asLong());
+        Assert.assertEquals("hello", byIds.get("messages").get(0).get("content").asText());
+        Assert.assertTrue(byIds.get("messages").get(1).isNull());
+
+        JsonNode page = CBOR.readTree(getCbor("/message?limit=1").asByteArray());
+        Assert.assertEquals(1, page.get("messages").get(0).get("id").asLong());
+        Assert.assertEquals(1, page.get("next").asLong());
+    }
+
+    /**
+     * Messages should be accepted as CBOR, single and in bulk
+     * @result Status 201, messages added with the decoded contents
+     */
+    @Test
+    public void postShouldAcceptCborTest() throws IOException {
+
+        given()
+            .port(PORT)
+            .auth()
+            .preemptive()
+            .basic("username", "password")
+            .contentType(MessageCborWriter.APPLICATION_CBOR)
+            .body(CBOR.writeValueAsBytes("hello"))
+        .when()
+            .post("/message")
+        .then()
+            .statusCode(201);
+
+        given()
+            .port(PORT)
+            .auth()
+            .preemptive()
+            .basic("username", "password")
+            .contentType(MessageCborWriter.APPLICATION_CBOR)
+            .body(CBOR.writeValueAsBytes(Arrays.asList("one", "two")))
+        .when()
+            .post("/message/bulk")
+        .then()
+            .statusCode(201);
+
+        Assert.assertEquals("hello", messageDao.get(1).getContent());
+        Assert.assertEquals("two", messageDao.get(3).getContent());
+
+        given()
+            .port(PORT)
+            .auth()
+            .preemptive()
+            .basic("username", "password")
+            .contentType(MessageCborWriter.APPLICATION_CBOR)
+            .body(CBOR.writeValueAsBytes(Arrays.asList("one", 2)))
+        .when()
+            .post("/message/bulk")
+        .then()
+            .statusCode(400);
+    }
+
+    /**
+     * put should accept CBOR and an If-Match with the tag of the CBOR
+     * representation
+     * @result Status 200, message replaced
+     */
+    @Test
+    public void putShouldAcceptCborTest() throws IOException {
+
+        messageDao.add(new Message("username", "hello"));
+
+        String tag = getCbor("/message/1").getHeader("ETag");
+
+        given()
+            .port(PORT)
+            .auth()
+            .preemptive()
+            .basic("username", "password")
+            .contentType(MessageCborWriter.APPLICATION_CBOR)
+            .accept(MessageCborWriter.APPLICATION_CBOR)
+            .header("If-Match", tag)
+            .body(CBOR.writeValueAsBytes("edited"))
+        .when()
+            .put("/message/1")
+        .then()
+            .statusCode(200);
+
+        Assert.assertEquals("edited", messageDao.get(1).getContent());
+    }
+
+    private Response getCbor(String path) {
+
+        Response response = given()
+            .port(PORT)
+            .auth()
+            .preemptive()
+            .basic("username", "password")
+            .accept(MessageCborWriter.APPLICATION_CBOR)
+        .when()
+            .get(path);
+
+        Assert.assertEquals(200, response.getStatusCode());
+        Assert.assertEquals(MessageCborWriter.APPLICATION_CBOR, response.getContentType());
+        return response;
+    }
+}
@@ -0,0 +1,85 @@
+package messaging;
+
+import io.restassured.response.Response;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.test.JerseyTest;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.Matchers.contains;
+
+public class MessageControllerChangesTests extends JerseyTest {
+
+    // Need to set port as the tests run on a different port than
+    // the standard application
+    private static final int PORT = 9998;
+
+    private static final MessageDao messageDao = new MessageDao();
+
+    @Override
+    protected ResourceConfig configure() {
+        return new Application(messageDao, TestUserStore.feature());
+    }
+
+    @After
+    public void after() throws Exception {
+        super.tearDown();
+        messageDao.clear();
+    }
+
+    /**
+     * changes should return every change after the cursor, including
+     * removals, and the cursor to continue from
+     * @result Status 200, Expected JSON body
+     */
+    @Test
+    public void changesShouldSucceedWith200Test() {
+
+        String since = messageDao.cursor(messageDao.getVersion());
+        long id = messageDao.add(new Message("username", "hello"));
+        messageDao.update(id, new Message("username", "edited"));
+        messageDao.remove(id);
+
+        given()
+            .port(PORT)
+            .auth()
+            .preemptive()
+            .basic("username", "password")
+            .queryParam("since", since)
+        .when()
+            .get("/message/changes")
+        .then()
+            .statusCode(200)
+            .body("changes.operation", contains("add", "update", "remove"))
+            .body("changes[1].content", equalTo("edited"))
+            .body("changes[2].id", equalTo((int) id))
+            .body("next", equalTo(messageDao.cursor(messageDao.getVersion())));
+
+    }
+
+    /**
+     * changes should ask for a resync when the cursor is unknown
+     * @result Status 410, error message
+     */
+    @Test
+    public void changesShouldFailWith410WhenCursorUnknownTest() {
+
+        Response response = given()
+                                .port(PORT)
+                                .auth()
+                                .preemptive()
+                                .basic("username", "password")
+                                .queryParam("since", "unknown")
+                            .when()
+                                .get("/message/changes");
+
+        String errorMsg = "Changes since unknown are no longer available," +
+                " please reload all messages";
+
+        Assert.assertEquals(410, response.getStatusCode());
+        Assert.assertEquals(errorMsg, response.getBody().asString());
+    }
+}
@@ -6,10 +6,8 @@ import org.glassfish.jersey.test.JerseyTest;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Test;
-import javax.ws.rs.core.Application;
 
 import static io.restassured.RestAssured.given;
-import static messaging.MessageController.messageDao;
 
 public class MessageControllerDeleteTests extends JerseyTest {
 
@@ -17,9 +15,11 @@ public class MessageControllerDeleteTests extends JerseyTest {
     // the standard application
     private static final int PORT = 9998;
 
+    private static final MessageDao messageDao = new MessageDao();
+
     @Override
-    protected Application configure() {
-        return new ResourceConfig(MessageController.class);
+    protected ResourceConfig configure() {
+        return new Application(messageDao, TestUserStore.feature());
     }
 
     @After
@@ -103,4 +103,71 @@ public class MessageControllerDeleteTests extends JerseyTest {
 
     }
 
+    /**
+     * delete should fail when If-Match names a version that has since been
+     * updated
+     * @result Status 412, updated message kept
+     */
+    @Test
+    public void deleteShouldFailWith412WhenIfMatchIsStaleTest() {
+
+        messageDao.add(new Message("username", "hello"));
+
+        String etag = given()
+                          .port(PORT)
+                          .auth()
+                          .preemptive()
+                          .basic("username", "password")
+                      .when()
+                          .get("/message/1")
+                      .getHeader("ETag");
+
+        given()
+            .port(PORT)
+            .auth()
+            .preemptive()
+            .basic("username", "password")
+            .header("If-Match", etag)
+            .body("Another")
+        .when()
+            .put("/message/1")
+        .then()
+            .statusCode(200);
+
+        Response response = given()
+                                .port(PORT)
+                                .auth()
+                                .preemptive()
+                                .basic("username", "password")
+                                .header("If-Match", etag)
+                            .when()
+                                .delete("/message/1");
+
+        String errorMsg = "Message with id=1 has been modified";
+
+        Assert.assertEquals(412, response.getStatusCode());
+        Assert.assertEquals(errorMsg, response.getBody().asString());
+        Assert.assertEquals("Another", messageDao.get(1).getContent());
+    }
+
+    /**
+     * conditional delete of a message that does not exist should fail the
+     * precondition rather than report it missing
+     * @result Status 412
+     */
+    @Test
+    public void deleteShouldFailWith412WhenIfMatchAndMessageDoesNotExistTest() {
+
+        Response response = given()
+                                .port(PORT)
+                                .auth()
+                                .preemptive()
+                                .basic("username", "password")
+                                .header("If-Match", "*")
+                            .when()
+                                .delete("/message/1");
+
+        Assert.assertEquals(412, response.getStatusCode());
+    }
+
 }
@@ -0,0 +1,135 @@
+package messaging;
+
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.authentication.HttpAuthenticationFeature;
+import org.glassfish.jersey.media.sse.EventInput;
+import org.glassfish.jersey.media.sse.InboundEvent;
+import org.glassfish.jersey.media.sse.SseFeature;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.test.JerseyTest;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MessageControllerEventsTests extends JerseyTest {
+
+    private static final MessageDao messageDao = new MessageDao();
+
+    @Override
+    protected ResourceConfig configure() {
+        return new Application(messageDao, TestUserStore.feature());
+    }
+
+    @Override
+    protected void configureClient(ClientConfig config) {
+        config.register(SseFeature.class);
+        config.register(HttpAuthenticationFeature.basic("username", "password"));
+    }
+
+    @After
+    public void after() throws Exception {
+        super.tearDown();
+        messageDao.clear();
+    }
+
+    /**
+     * Subscribers should be sent the changes made after subscribing
+     * @result add events with the message ids, in order
+     */
+    @Test(timeout = 10000)
+    public void eventsShouldStreamChangesTest() {
+
+        EventInput events = target("message/events").request().get(EventInput.class);
+
+        long first = messageDao.add(new Message("username", "hello"));
+        long second = messageDao.add(new Message("another", "other"));
+
+        InboundEvent added = events.read();
+        JSONObject data = new JSONObject(added.readData());
+
+        Assert.assertEquals("add", added.getName());
+        Assert.assertEquals(first, data.getLong("id"));
+        Assert.assertEquals("hello", data.getString("content"));
+
+        added = events.read();
+
+        Assert.assertEquals("add", added.getName());
+        Assert.assertEquals(second, new JSONObject(added.readData()).getLong("id"));
+
+        events.close();
+    }
+
+    /**
+     * Subscribers reconnecting with a Last-Event-ID should first be sent
+     * the changes they missed
+     * @result event of the change after Last-Event-ID
+     */
+    @Test(timeout = 10000)
+    public void eventsShouldResumeAfterLastEventIdTest() {
+
+        messageDao.add(new Message("username", "hello"));
+        String lastEventId = messageDao.cursor(messageDao.getVersion());
+        long id = messageDao.add(new Message("username", "missed"));
+
+        EventInput events = target("message/events").request()
+                .header(SseFeature.LAST_EVENT_ID_HEADER, lastEventId)
+                .get(EventInput.class);
+
+        InboundEvent missed = events.read();
+
+        Assert.assertEquals("add", missed.getName());
+        Assert.assertEquals(id, new JSONObject(missed.readData()).getLong("id"));
+
+        events.close();
+    }
+
+    /**
+     * Subscribers reconnecting with an unknown Last-Event-ID should be
+     * told to resync
+     * @result resync event, then the stream ends
+     */
+    @Test(timeout = 10000)
+    public void eventsShouldRequestResyncForUnknownLastEventIdTest() {
+
+        EventInput events = target("message/events").request()
+                .header(SseFeature.LAST_EVENT_ID_HEADER, "unknown")
+                .get(EventInput.class);
+
+        Assert.assertEquals("resync", events.read().getName());
+        Assert.assertNull(events.read());
+    }
+
+    /**
+     * Every subscriber should be sent every change while changes keep
+     * coming, even with more subscribers than threads sending events
+     * @result add events of all messages, in order, for every subscriber
+     */
+    @Test(timeout = 30000)
+    public void eventsShouldReachMoreSubscribersThanSenderThreadsTest() {
+
+        // Several times the default messaging.events.threads
+        List<EventInput> subscribers = new ArrayList<>();
+        for(int i = 0; i < 16; i++) {
+            subscribers.add(target("message/events").request().get(EventInput.class));
+        }
+
+        List<Long> ids = new ArrayList<>();
+        for(int i = 0; i < 200; i++) {
+            ids.add(messageDao.add(new Message("username", "hello " + i)));
+        }
+
+        for(EventInput events : subscribers) {
+            for(long id : ids) {
+                InboundEvent added = events.read();
+
+                Assert.assertEquals("add", added.getName());
+                Assert.assertEquals(id, new JSONObject(added.readData()).getLong("id"));
+            }
+            events.close();
+        }
+    }
+}
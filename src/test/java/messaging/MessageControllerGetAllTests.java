@@ -6,11 +6,11 @@ import org.glassfish.jersey.test.JerseyTest;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Test;
-import javax.ws.rs.core.Application;
 
 import static io.restassured.RestAssured.given;
-import static messaging.MessageController.messageDao;
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.Matchers.contains;
 
 public class MessageControllerGetAllTests extends JerseyTest {
 
@@ -18,9 +18,11 @@ public class MessageControllerGetAllTests extends JerseyTest {
     // the standard application
     private static final int PORT = 9998;
 
+    private static final MessageDao messageDao = new MessageDao();
+
     @Override
-    protected Application configure() {
-        return new ResourceConfig(MessageController.class);
+    protected ResourceConfig configure() {
+        return new Application(messageDao, TestUserStore.feature());
     }
 
     @After
@@ -127,4 +129,250 @@ public class MessageControllerGetAllTests extends JerseyTest {
             .body("1.author", equalTo("username"));
 
     }
+
+    /**
+     * get all with a limit should return the first page of messages
+     * together with a cursor to the next page
+     * @result Status 200, Expected JSON body
+     */
+    @Test
+    public void getAllShouldReturnFirstPageWhenLimitProvidedTest() {
+
+        for(int i = 0; i < 3; i++) {
+            messageDao.add(new Message("username", "hello" + i));
+        }
+
+        given()
+            .port(PORT)
+            .auth()
+            .preemptive()
+            .basic("username", "password")
+            .queryParam("limit", 2)
+        .when()
+            .get("/message")
+        .then()
+            .statusCode(200)
+            .body("messages.id", contains(1, 2))
+            .body("messages[0].content", equalTo("hello0"))
+            .body("next", equalTo(2));
+
+    }
+
+    /**
+     * get all with an after cursor should return the following messages
+     * and no next cursor on the last page
+     * @result Status 200, Expected JSON body
+     */
+    @Test
+    public void getAllShouldReturnPageAfterCursorTest() {
+
+        for(int i = 0; i < 3; i++) {
+            messageDao.add(new Message("username", "hello" + i));
+        }
+
+        given()
+            .port(PORT)
+            .auth()
+            .preemptive()
+            .basic("username", "password")
+            .queryParam("after", 2)
+        .when()
+            .get("/message")
+        .then()
+            .statusCode(200)
+            .body("messages.id", contains(3))
+            .body("next", nullValue())
+            .body("previous", equalTo(3));
+
+    }
+
+    /**
+     * get all should fail when the requested page size is out of range
+     * @result Status 400, error message
+     */
+    @Test
+    public void getAllShouldFailWith400WhenLimitOutOfRangeTest() {
+
+        Response response = given()
+                                .port(PORT)
+                                .auth()
+                                .preemptive()
+                                .basic("username", "password")
+                                .queryParam("limit", 0)
+                            .when()
+                                .get("/message");
+
+        String errorMsg = "Please provide a limit between 1 and 1000";
+
+        Assert.assertEquals(400, response.getStatusCode());
+        Assert.assertEquals(errorMsg, response.getBody().asString());
+    }
+
+    /**
+     * get all with an author filter should only return that author's
+     * messages, paged together with the limit
+     * @result Status 200, Expected JSON body
+     */
+    @Test
+    public void getAllShouldFilterByAuthorTest() {
+
+        messageDao.add(new Message("username", "hello"));
+        messageDao.add(new Message("another", "other"));
+        messageDao.add(new Message("username", "third"));
+        messageDao.add(new Message("username", "fourth"));
+
+        given()
+            .port(PORT)
+            .auth()
+            .preemptive()
+            .basic("username", "password")
+            .queryParam("author", "username")
+            .queryParam("limit", 2)
+        .when()
+            .get("/message")
+        .then()
+            .statusCode(200)
+            .body("messages.id", contains(1, 3))
+            .body("messages.author", contains("username", "username"))
+            .body("next", equalTo(3));
+
+    }
+
+    /**
+     * get all with ids should return the requested messages in the
+     * requested order, with null for the ids that were not found
+     * @result Status 200, Expected JSON body
+     */
+    @Test
+    public void getAllShouldReturnRequestedIdsTest() {
+
+        messageDao.add(new Message("username", "hello"));
+        messageDao.add(new Message("another", "other"));
+
+        given()
+            .port(PORT)
+            .auth()
+            .preemptive()
+            .basic("username", "password")
+            .queryParam("ids", "2,3,1")
+        .when()
+            .get("/message")
+        .then()
+            .statusCode(200)
+            .body("messages.size()", equalTo(3))
+            .body("messages[0].id", equalTo(2))
+            .body("messages[0].author", equalTo("another"))
+            .body("messages[1]", nullValue())
+            .body("messages[2].id", equalTo(1))
+            .body("messages[2].content", equalTo("hello"));
+
+    }
+
+    /**
+     * get all should fail when ids are not numbers
+     * @result Status 400, error message
+     */
+    @Test
+    public void getAllShouldFailWith400WhenIdsInvalidTest() {
+
+        Response response = given()
+                                .port(PORT)
+                                .auth()
+                                .preemptive()
+                                .basic("username", "password")
+                                .queryParam("ids", "1,two")
+                            .when()
+                                .get("/message");
+
+        String errorMsg = "Please provide comma separated message ids";
+
+        Assert.assertEquals(400, response.getStatusCode());
+        Assert.assertEquals(errorMsg, response.getBody().asString());
+    }
+
+    /**
+     * get all should return 304 until any message changes
+     * @result Status 304 for the current ETag, 200 after an addition
+     */
+    @Test
+    public void getAllShouldSucceedWith304WhenNotModifiedTest() {
+
+        messageDao.add(new Message("username", "hello"));
+
+        String etag = given()
+                          .port(PORT)
+                          .auth()
+                          .preemptive()
+                          .basic("username", "password")
+                      .when()
+                          .get("/message")
+                      .getHeader("ETag");
+
+        given()
+            .port(PORT)
+            .auth()
+            .preemptive()
+            .basic("username", "password")
+            .header("If-None-Match", etag)
+        .when()
+            .get("/message")
+        .then()
+            .statusCode(304);
+
+        messageDao.add(new Message("another", "other"));
+
+        given()
+            .port(PORT)
+            .auth()
+            .preemptive()
+            .basic("username", "password")
+            .header("If-None-Match", etag)
+        .when()
+            .get("/message")
+        .then()
+            .statusCode(200)
+            .body("2.content", equalTo("other"));
+
+    }
+
+    /**
+     * get all should reject invalid parameters even when the ETag is current
+     * @result Status 400 for an invalid limit and for invalid ids
+     */
+    @Test
+    public void getAllShouldFailWith400BeforeNotModifiedTest() {
+
+        messageDao.add(new Message("username", "hello"));
+
+        String etag = given()
+                          .port(PORT)
+                          .auth()
+                          .preemptive()
+                          .basic("username", "password")
+                      .when()
+                          .get("/message")
+                      .getHeader("ETag");
+
+        given()
+            .port(PORT)
+            .auth()
+            .preemptive()
+            .basic("username", "password")
+            .header("If-None-Match", etag)
+        .when()
+            .get("/message?limit=0")
+        .then()
+            .statusCode(400);
+
+        given()
+            .port(PORT)
+            .auth()
+            .preemptive()
+            .basic("username", "password")
+            .header("If-None-Match", etag)
+        .when()
+            .get("/message?ids=1,one")
+        .then()
+            .statusCode(400);
+    }
 }
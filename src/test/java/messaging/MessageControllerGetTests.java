@@ -6,10 +6,8 @@ import org.glassfish.jersey.test.JerseyTest;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Test;
-import javax.ws.rs.core.Application;
 
 import static io.restassured.RestAssured.given;
-import static messaging.MessageController.messageDao;
 import static org.hamcrest.CoreMatchers.equalTo;
 
 public class MessageControllerGetTests extends JerseyTest {
@@ -18,9 +16,11 @@ public class MessageControllerGetTests extends JerseyTest {
     // the standard application
     private static final int PORT = 9998;
 
+    private static final MessageDao messageDao = new MessageDao();
+
     @Override
-    protected Application configure() {
-        return new ResourceConfig(MessageController.class);
+    protected ResourceConfig configure() {
+        return new Application(messageDao, TestUserStore.feature());
     }
 
     @After
@@ -99,5 +99,49 @@ public class MessageControllerGetTests extends JerseyTest {
         Assert.assertEquals(errorMsg, response.getBody().asString());
     }
 
+    /**
+     * get should return 304 while the message is unchanged and the
+     * message again once it was updated
+     * @result Status 304 for the current ETag, 200 after an update
+     */
+    @Test
+    public void getShouldSucceedWith304WhenNotModifiedTest() {
 
+        messageDao.add(new Message("username", "hello"));
+
+        String etag = given()
+                          .port(PORT)
+                          .auth()
+                          .preemptive()
+                          .basic("username", "password")
+                      .when()
+                          .get("/message/1")
+                      .getHeader("ETag");
+
+        given()
+            .port(PORT)
+            .auth()
+            .preemptive()
+            .basic("username", "password")
+            .header("If-None-Match", etag)
+        .when()
+            .get("/message/1")
+        .then()
+            .statusCode(304);
+
+        messageDao.update(1, new Message("username", "edited"));
+
+        given()
+            .port(PORT)
+            .auth()
+            .preemptive()
+            .basic("username", "password")
+            .header("If-None-Match", etag)
+        .when()
+            .get("/message/1")
+        .then()
+            .statusCode(200)
+            .body("content", equalTo("edited"));
+
+    }
 }
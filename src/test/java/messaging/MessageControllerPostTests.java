@@ -8,10 +8,9 @@ import org.junit.After;
 import org.junit.Assert;
 import org.junit.Test;
 import java.lang.String;
-import javax.ws.rs.core.Application;
 
 import static io.restassured.RestAssured.given;
-import static messaging.MessageController.messageDao;
+import static org.hamcrest.Matchers.contains;
 
 public class MessageControllerPostTests extends JerseyTest {
 
@@ -19,9 +18,11 @@ public class MessageControllerPostTests extends JerseyTest {
     // the standard application
     private static final int PORT = 9998;
 
+    private static final MessageDao messageDao = new MessageDao();
+
     @Override
-    protected Application configure() {
-        return new ResourceConfig(MessageController.class);
+    protected ResourceConfig configure() {
+        return new Application(messageDao, TestUserStore.feature());
     }
 
     @After
@@ -125,4 +126,77 @@ public class MessageControllerPostTests extends JerseyTest {
         Assert.assertEquals(errorMsg, response.getBody().asString());
 
     }
+
+    /**
+     * Bulk post should add every message and return their ids
+     * @result Status 201, ids of created messages
+     */
+    @Test
+    public void bulkPostShouldSucceedWith201Test() {
+
+        given()
+            .port(PORT)
+            .auth()
+            .preemptive()
+            .basic("username", "password")
+            .body("[\"Hello\", \"World\"]")
+        .when()
+            .post("/message/bulk")
+        .then()
+            .statusCode(201)
+            .body("ids", contains(1, 2));
+
+        Assert.assertEquals("World", messageDao.get(2).getContent());
+    }
+
+    /**
+     * Bulk post should add nothing when any content is invalid
+     * @result Status 400, error message, no messages added
+     */
+    @Test
+    public void bulkPostShouldFailWith400WhenAnyContentInvalidTest() {
+
+        Response response = given()
+                                .port(PORT)
+                                .auth()
+                                .preemptive()
+                                .basic("username", "password")
+                                .body("[\"Hello\", \"\"]")
+                            .when()
+                                .post("/message/bulk");
+
+        String errorMsg = "Please provide message content between" +
+                " 1 and 500 characters in length (index 1)";
+
+        Assert.assertEquals(400, response.getStatusCode());
+        Assert.assertEquals(errorMsg, response.getBody().asString());
+        Assert.assertEquals("{}", messageDao.getAllMessages());
+    }
+
+    /**
+     * Bulk post should refuse more messages than one request may add
+     * @result Status 400, error message, no messages added
+     */
+    @Test
+    public void bulkPostShouldFailWith400WhenTooManyMessagesTest() {
+
+        StringBuilder body = new StringBuilder("[");
+        for(int i = 0; i < 1001; i++) {
+            body.append(i == 0 ? "" : ",").append("\"Hello\"");
+        }
+        body.append(']');
+
+        Response response = given()
+                                .port(PORT)
+                                .auth()
+                                .preemptive()
+                                .basic("username", "password")
+                                .body(body.toString())
+                            .when()
+                                .post("/message/bulk");
+
+        Assert.assertEquals(400, response.getStatusCode());
+        Assert.assertEquals("Please provide between 1 and 1000 messages", response.getBody().asString());
+        Assert.assertEquals("{}", messageDao.getAllMessages());
+    }
 }
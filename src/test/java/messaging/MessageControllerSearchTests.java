@@ -0,0 +1,103 @@
+package messaging;
+
+import io.restassured.response.Response;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.test.JerseyTest;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+
+public class MessageControllerSearchTests extends JerseyTest {
+
+    // Need to set port as the tests run on a different port than
+    // the standard application
+    private static final int PORT = 9998;
+
+    private static final MessageDao messageDao = new MessageDao();
+
+    @Override
+    protected ResourceConfig configure() {
+        return new Application(messageDao, TestUserStore.feature());
+    }
+
+    @After
+    public void after() throws Exception {
+        super.tearDown();
+        messageDao.clear();
+    }
+
+    /**
+     * search should return the messages containing all query words
+     * @result Status 200, Expected JSON body
+     */
+    @Test
+    public void searchShouldSucceedWith200Test() {
+
+        messageDao.add(new Message("username", "hello world"));
+        messageDao.add(new Message("another", "hello there"));
+
+        given()
+            .port(PORT)
+            .auth()
+            .preemptive()
+            .basic("username", "password")
+            .queryParam("q", "Hello World")
+        .when()
+            .get("/message/search")
+        .then()
+            .statusCode(200)
+            .body("results.id", contains(1))
+            .body("results[0].author", equalTo("username"))
+            .body("results[0].content", equalTo("hello world"));
+
+    }
+
+    /**
+     * search should succeed with no results when nothing matches
+     * @result Status 200, empty results
+     */
+    @Test
+    public void searchShouldSucceedWith200WhenNothingMatchesTest() {
+
+        messageDao.add(new Message("username", "hello world"));
+
+        given()
+            .port(PORT)
+            .auth()
+            .preemptive()
+            .basic("username", "password")
+            .queryParam("q", "goodbye")
+        .when()
+            .get("/message/search")
+        .then()
+            .statusCode(200)
+            .body("results", empty());
+
+    }
+
+    /**
+     * search should fail when no query is provided
+     * @result Status 400, error message
+     */
+    @Test
+    public void searchShouldFailWith400WhenNoQueryProvidedTest() {
+
+        Response response = given()
+                                .port(PORT)
+                                .auth()
+                                .preemptive()
+                                .basic("username", "password")
+                            .when()
+                                .get("/message/search");
+
+        String errorMsg = "Please provide a search query";
+
+        Assert.assertEquals(400, response.getStatusCode());
+        Assert.assertEquals(errorMsg, response.getBody().asString());
+    }
+}
@@ -7,10 +7,8 @@ import org.glassfish.jersey.test.JerseyTest;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Test;
-import javax.ws.rs.core.Application;
 
 import static io.restassured.RestAssured.given;
-import static messaging.MessageController.messageDao;
 import static org.hamcrest.CoreMatchers.equalTo;
 
 public class MessageControllerUpdateTests extends JerseyTest {
@@ -19,9 +17,11 @@ public class MessageControllerUpdateTests extends JerseyTest {
     // the standard application
     private static final int PORT = 9998;
 
+    private static final MessageDao messageDao = new MessageDao();
+
     @Override
-    protected Application configure() {
-        return new ResourceConfig(MessageController.class);
+    protected ResourceConfig configure() {
+        return new Application(messageDao, TestUserStore.feature());
     }
 
     @After
@@ -192,5 +192,70 @@ public class MessageControllerUpdateTests extends JerseyTest {
 
     }
 
-}
+    /**
+     * update should only succeed while If-Match names the current version
+     * @result Status 200 for the current ETag, 412 for a stale one
+     */
+    @Test
+    public void updateShouldFailWith412WhenIfMatchIsStaleTest() {
+
+        messageDao.add(new Message("username", "hello"));
+
+        String etag = given()
+                          .port(PORT)
+                          .auth()
+                          .preemptive()
+                          .basic("username", "password")
+                      .when()
+                          .get("/message/1")
+                      .getHeader("ETag");
+
+        given()
+            .port(PORT)
+            .auth()
+            .preemptive()
+            .basic("username", "password")
+            .header("If-Match", etag)
+            .body("Another")
+        .when()
+            .put("/message/1")
+        .then()
+            .statusCode(200)
+            .body("content", equalTo("Another"));
 
+        Response response = given()
+                                .port(PORT)
+                                .auth()
+                                .preemptive()
+                                .basic("username", "password")
+                                .header("If-Match", etag)
+                                .body("Lost update")
+                            .when()
+                                .put("/message/1");
+
+        Assert.assertEquals(412, response.getStatusCode());
+        Assert.assertEquals("Another", messageDao.get(1).getContent());
+    }
+
+    /**
+     * conditional update of a message that does not exist should fail the
+     * precondition rather than report it missing
+     * @result Status 412
+     */
+    @Test
+    public void updateShouldFailWith412WhenIfMatchAndMessageDoesNotExistTest() {
+
+        Response response = given()
+                                .port(PORT)
+                                .auth()
+                                .preemptive()
+                                .basic("username", "password")
+                                .header("If-Match", "*")
+                                .body("hello")
+                            .when()
+                                .put("/message/1");
+
+        Assert.assertEquals(412, response.getStatusCode());
+        Assert.assertNull(messageDao.find(1));
+    }
+}
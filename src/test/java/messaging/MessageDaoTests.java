@@ -1,7 +1,13 @@
 package messaging;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import org.junit.Test;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.NoSuchElementException;
 
 public class MessageDaoTests {
@@ -96,6 +102,139 @@ public class MessageDaoTests {
         assertEquals(message, messageDao.get(1));
     }
 
+    /**
+     * writeMessages should return the requested messages in the requested
+     * order, with null for the ids that were not found
+     * @result returns a Json array of messages and nulls
+     */
+    @Test
+    public void writeMessagesShouldReturnFoundAndMissingIds() throws Exception {
+
+        MessageDao messageDao = new MessageDao();
+        messageDao.add(new Message("username", "hello"));
+        messageDao.add(new Message("another", "other"));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        messageDao.writeMessages(new long[] {2, 5, 1}, output);
+
+        String expect = "{\"messages\":[" +
+                "{\"id\":2,\"author\":\"another\",\"content\":\"other\"}," +
+                "null," +
+                "{\"id\":1,\"author\":\"username\",\"content\":\"hello\"}]}";
+
+        assertEquals(expect, new String(output.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * addAll should add messages with consecutive ids following
+     * the existing ones
+     * @result returns first id, messages added in order
+     */
+    @Test
+    public void addAllShouldAddMessagesWithConsecutiveIds() {
+
+        MessageDao messageDao = new MessageDao();
+        messageDao.add(new Message("username", "first"));
+
+        long first = messageDao.addAll(Arrays.asList(
+                new Message("username", "second"),
+                new Message("username", "third")));
+
+        assertEquals(2, first);
+        assertEquals("second", messageDao.get(2).getContent());
+        assertEquals("third", messageDao.get(3).getContent());
+        assertEquals(4, messageDao.add(new Message("username", "fourth")));
+    }
+
+    /**
+     * Every mutation should give the stored message and the MessageDao
+     * a new version
+     * @result versions increase with each mutation
+     */
+    @Test
+    public void mutationsShouldIncreaseVersions() {
+
+        MessageDao messageDao = new MessageDao();
+        messageDao.add(new Message("username", "hello"));
+        long added = messageDao.get(1).getVersion();
+
+        messageDao.update(1, new Message("username", "edited"));
+        long updated = messageDao.get(1).getVersion();
+
+        assertTrue(added > 0);
+        assertTrue(updated > added);
+        assertEquals(updated, messageDao.getVersion());
+
+        messageDao.remove(1);
+        assertTrue(messageDao.getVersion() > updated);
+    }
+
+    /**
+     * compareAndReplace should only replace a message of the same author
+     * at the expected version, and report why it did not otherwise
+     * @result replaces message only when author and version match
+     */
+    @Test
+    public void compareAndReplaceShouldCheckAuthorAndVersion() {
+
+        MessageDao messageDao = new MessageDao();
+        messageDao.add(new Message("username", "hello"));
+        long version = messageDao.get(1).getVersion();
+
+        assertEquals(WriteResult.Status.NOT_FOUND, messageDao.compareAndReplace(2,
+                new Message("username", "edited"), MessageDao.ANY_VERSION).getStatus());
+        assertEquals(WriteResult.Status.FORBIDDEN, messageDao.compareAndReplace(1,
+                new Message("another", "edited"), MessageDao.ANY_VERSION).getStatus());
+        assertEquals(WriteResult.Status.CONFLICT, messageDao.compareAndReplace(1,
+                new Message("username", "edited"), version + 1).getStatus());
+        assertEquals(WriteResult.Status.OK, messageDao.compareAndReplace(1,
+                new Message("username", "edited"), version).getStatus());
+        assertEquals("edited", messageDao.get(1).getContent());
+    }
+
+    /**
+     * The MessageDao should version a copy of the messages it is given,
+     * leaving the caller's message unchanged, and return that copy
+     * @result stored copies carry the versions, given messages stay at 0
+     */
+    @Test
+    public void mutationsShouldStoreVersionedCopies() {
+
+        MessageDao messageDao = new MessageDao();
+        Message added = new Message("username", "hello");
+        messageDao.add(added);
+
+        Message edited = new Message("username", "edited");
+        WriteResult result = messageDao.compareAndReplace(1, edited, MessageDao.ANY_VERSION);
+
+        assertEquals(0, added.getVersion());
+        assertEquals(0, edited.getVersion());
+        assertEquals("edited", result.getMessage().getContent());
+        assertEquals(messageDao.getVersion(), result.getMessage().getVersion());
+        assertEquals(result.getMessage().getVersion(), messageDao.get(1).getVersion());
+    }
+
+    /**
+     * compareAndRemove should only remove a message of the given author
+     * at the expected version
+     * @result removes message only when author and version match
+     */
+    @Test
+    public void compareAndRemoveShouldCheckAuthorAndVersion() {
+
+        MessageDao messageDao = new MessageDao();
+        messageDao.add(new Message("username", "hello"));
+        long version = messageDao.get(1).getVersion();
+
+        assertEquals(WriteResult.Status.FORBIDDEN,
+                messageDao.compareAndRemove(1, "another", version).getStatus());
+        assertEquals(WriteResult.Status.CONFLICT,
+                messageDao.compareAndRemove(1, "username", version + 1).getStatus());
+        assertEquals(WriteResult.Status.OK,
+                messageDao.compareAndRemove(1, "username", version).getStatus());
+        assertNull(messageDao.find(1));
+    }
+
     /**
      * update should successfully replace original message with the specified
      * new message if the original message is found
@@ -202,4 +341,93 @@ public class MessageDaoTests {
 
     }
 
+    /**
+     * getPage should return messages in ascending id order, limited to
+     * the page size, with a next cursor when more messages follow
+     * @result first page of messages and cursor to the next page
+     */
+    @Test
+    public void getPageShouldReturnFirstMessagesWithNextCursor() {
+
+        MessageDao messageDao = new MessageDao();
+        for(int i = 0; i < 5; i++) {
+            messageDao.add(new Message("username", "hello" + i));
+        }
+
+        MessagePage page = messageDao.getPage(null, null, 2);
+
+        assertEquals(Arrays.asList(1L, 2L),
+                new ArrayList<>(page.getMessages().keySet()));
+        assertEquals(Long.valueOf(2), page.getNext());
+        assertNull(page.getPrevious());
+    }
+
+    /**
+     * getPage should continue after the given cursor and skip removed ids
+     * @result page of messages following the cursor
+     */
+    @Test
+    public void getPageShouldContinueAfterCursor() {
+
+        MessageDao messageDao = new MessageDao();
+        for(int i = 0; i < 5; i++) {
+            messageDao.add(new Message("username", "hello" + i));
+        }
+        messageDao.remove(4);
+
+        MessagePage page = messageDao.getPage(2L, null, 10);
+
+        assertEquals(Arrays.asList(3L, 5L),
+                new ArrayList<>(page.getMessages().keySet()));
+        assertNull(page.getNext());
+        assertEquals(Long.valueOf(3), page.getPrevious());
+    }
+
+    /**
+     * getPage should return the messages directly preceding the given
+     * `before` cursor, still in ascending order
+     * @result page of messages preceding the cursor
+     */
+    @Test
+    public void getPageShouldReturnMessagesBeforeCursor() {
+
+        MessageDao messageDao = new MessageDao();
+        for(int i = 0; i < 5; i++) {
+            messageDao.add(new Message("username", "hello" + i));
+        }
+
+        MessagePage page = messageDao.getPage(null, 5L, 2);
+
+        assertEquals(Arrays.asList(3L, 4L),
+                new ArrayList<>(page.getMessages().keySet()));
+        assertEquals(Long.valueOf(4), page.getNext());
+        assertEquals(Long.valueOf(3), page.getPrevious());
+    }
+
+    /**
+     * getPage with an author should only return that author's messages,
+     * and follow updates and removals of them
+     * @result page of the author's current messages
+     */
+    @Test
+    public void getPageShouldFilterByAuthor() {
+
+        MessageDao messageDao = new MessageDao();
+        messageDao.add(new Message("username", "hello"));
+        messageDao.add(new Message("another", "other"));
+        messageDao.add(new Message("username", "third"));
+        messageDao.add(new Message("username", "fourth"));
+        messageDao.update(3, new Message("username", "edited"));
+        messageDao.remove(4);
+
+        MessagePage page = messageDao.getPage("username", null, null, 10);
+
+        assertEquals(Arrays.asList(1L, 3L),
+                new ArrayList<>(page.getMessages().keySet()));
+        assertEquals("edited", page.getMessages().get(3L).getContent());
+        assertNull(page.getNext());
+        assertEquals(0, messageDao.getPage("nobody", null, null, 10)
+                .getMessages().size());
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,88 @@
+package messaging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class MessageJsonWriterTests {
+
+    private final MessageJsonWriter writer = new MessageJsonWriter();
+
+    private String write(Object entity) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        writer.writeTo(entity, entity.getClass(), entity.getClass(), null,
+                MediaType.APPLICATION_JSON_TYPE, null, output);
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A message should be written as its cached Json
+     * @result the Json of the message, with its length known up front
+     */
+    @Test
+    public void writeToShouldWriteMessage() throws IOException {
+
+        Message message = new Message("anna", "Hello \"you\"");
+
+        assertEquals(message.toString(), write(message));
+        assertEquals(message.toJson().length,
+                writer.getSize(message, Message.class, Message.class, null, MediaType.APPLICATION_JSON_TYPE));
+    }
+
+    /**
+     * A page should be written in order, without cursors that are null
+     * @result the messages with their ids and the next cursor
+     */
+    @Test
+    public void writeToShouldWriteMessagePage() throws IOException {
+
+        Map<Long, Message> messages = new LinkedHashMap<>();
+        messages.put(1L, new Message("anna", "Hello"));
+        messages.put(2L, new Message("linda", "Hej å"));
+
+        String expect = "{\"messages\":[" +
+                "{\"id\":1,\"author\":\"anna\",\"content\":\"Hello\"}," +
+                "{\"id\":2,\"author\":\"linda\",\"content\":\"Hej å\"}]," +
+                "\"next\":2}";
+
+        assertEquals(expect, write(new MessagePage(messages, 2L, null)));
+        assertEquals(expect, new MessagePage(messages, 2L, null).toString());
+    }
+
+    /**
+     * A change page should leave out what removals do not have
+     * @result the changes and the next cursor
+     */
+    @Test
+    public void writeToShouldWriteChangePage() throws IOException {
+
+        ChangePage page = new ChangePage(Arrays.asList(
+                new MessageChange(MessageLog.Operation.ADD, 1, 1, new Message("anna", "Hello")),
+                new MessageChange(MessageLog.Operation.REMOVE, 2, 1, null)), "0-2");
+
+        assertEquals("{\"changes\":[" +
+                "{\"sequence\":1,\"operation\":\"add\",\"id\":1,\"author\":\"anna\",\"content\":\"Hello\"}," +
+                "{\"sequence\":2,\"operation\":\"remove\",\"id\":1}]," +
+                "\"next\":\"0-2\"}", write(page));
+    }
+
+    /**
+     * Only the message types should be written, and only as Json
+     * @result writeable for Message as Json, not for other types or media types
+     */
+    @Test
+    public void isWriteableShouldOnlyAcceptMessageTypesAsJson() {
+
+        assertTrue(writer.isWriteable(Message.class, Message.class, null, MediaType.APPLICATION_JSON_TYPE));
+        assertFalse(writer.isWriteable(String.class, String.class, null, MediaType.APPLICATION_JSON_TYPE));
+        assertFalse(writer.isWriteable(Message.class, Message.class, null, MediaType.TEXT_PLAIN_TYPE));
+    }
+}
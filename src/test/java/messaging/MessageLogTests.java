@@ -0,0 +1,359 @@
+package messaging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+
+public class MessageLogTests {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Messages added, updated and removed through a logged MessageDao
+     * should be restored when the log is opened again
+     * @result reopened dao contains the same messages
+     */
+    @Test
+    public void reopenShouldRestoreLoggedMessages() throws IOException {
+
+        Path dir = folder.getRoot().toPath();
+
+        MessageDao messageDao = new MessageDao(dir, 16, 0);
+        messageDao.add(new Message("username", "hello"));
+        messageDao.add(new Message("username", "other"));
+        messageDao.add(new Message("another", "third"));
+        messageDao.update(2, new Message("username", "edited"));
+        messageDao.remove(3);
+        messageDao.close();
+
+        MessageDao reopened = new MessageDao(dir, 16, 0);
+
+        assertEquals("{\"1\":{\"author\":\"username\",\"content\":\"hello\"}," +
+                "\"2\":{\"author\":\"username\",\"content\":\"edited\"}}",
+                reopened.getAllMessages());
+        reopened.close();
+    }
+
+    /**
+     * Ids handed out after reopening should continue after the highest
+     * logged id, even if that message was removed
+     * @result new message gets the next unused id
+     */
+    @Test(expected = NoSuchElementException.class)
+    public void reopenShouldContinueCounter() throws IOException {
+
+        Path dir = folder.getRoot().toPath();
+
+        MessageDao messageDao = new MessageDao(dir, 16, 0);
+        messageDao.add(new Message("username", "hello"));
+        messageDao.add(new Message("username", "other"));
+        messageDao.remove(2);
+        messageDao.close();
+
+        MessageDao reopened = new MessageDao(dir, 16, 0);
+
+        assertEquals(3, reopened.add(new Message("username", "third")));
+        try {
+            reopened.get(2);
+        } finally {
+            reopened.close();
+        }
+    }
+
+    /**
+     * A partially written record at the end of the log should be
+     * discarded on open, keeping every complete record before it
+     * @result complete records are restored, torn tail is ignored
+     */
+    @Test
+    public void openShouldDiscardTornTail() throws IOException {
+
+        Path dir = folder.getRoot().toPath();
+
+        MessageDao messageDao = new MessageDao(dir, 16, 0);
+        messageDao.add(new Message("username", "hello"));
+        messageDao.add(new Message("username", "other"));
+        messageDao.close();
+
+        try(FileChannel channel = FileChannel.open(dir.resolve("messages.1.log"),
+                StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        MessageDao reopened = new MessageDao(dir, 16, 0);
+        reopened.add(new Message("username", "again"));
+        reopened.close();
+
+        MessageDao again = new MessageDao(dir, 16, 0);
+
+        assertEquals("{\"1\":{\"author\":\"username\",\"content\":\"hello\"}," +
+                "\"2\":{\"author\":\"username\",\"content\":\"again\"}}",
+                again.getAllMessages());
+        again.close();
+    }
+
+    /**
+     * Concurrent adds should all be durable and restored, even when they
+     * are committed together
+     * @result every message added concurrently is restored
+     */
+    @Test
+    public void concurrentAddsShouldAllBeRestored() throws Exception {
+
+        Path dir = folder.getRoot().toPath();
+        MessageDao messageDao = new MessageDao(dir, 64, 200);
+
+        int threads = 8;
+        int perThread = 50;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> writers = new ArrayList<>();
+
+        for(int t = 0; t < threads; t++) {
+            Thread writer = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for(int i = 0; i < perThread; i++) {
+                    messageDao.add(new Message("username", "hello"));
+                }
+            });
+            writer.start();
+            writers.add(writer);
+        }
+
+        start.countDown();
+        for(Thread writer : writers) {
+            writer.join();
+        }
+        messageDao.close();
+
+        MessageDao reopened = new MessageDao(dir, 64, 200);
+
+        assertEquals(threads * perThread,
+                reopened.getPage(null, null, 1000).getMessages().size());
+        reopened.close();
+    }
+
+    /**
+     * Once the log fails to write, the failed mutation should be reported
+     * and every later mutation refused before it is applied, while reads
+     * keep working
+     * @result writes throw UncheckedIOException, refused ones leave no trace
+     */
+    @Test
+    public void failedLogShouldMakeMessagesReadOnly() throws IOException {
+
+        Path dir = folder.getRoot().toPath();
+        FailingChannel[] channel = new FailingChannel[1];
+
+        MessageDao messageDao = new MessageDao(new HeapMessageStore(), MessageDao.DEFAULT_CHANGE_RETENTION,
+                dir, 16, 0, file -> channel[0] = new FailingChannel(FileChannel.open(file,
+                        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)));
+
+        messageDao.add(new Message("username", "hello"));
+        channel[0].failing = true;
+
+        try {
+            messageDao.add(new Message("username", "lost"));
+            fail("Expected the failed write to be reported");
+        } catch (UncheckedIOException e) {
+            // Applied in memory before it failed, see MessageDao
+        }
+
+        long version = messageDao.getVersion();
+
+        try {
+            messageDao.update(1, new Message("username", "refused"));
+            fail("Expected the update to be refused");
+        } catch (UncheckedIOException e) {
+            assertEquals("Disk failed", e.getCause().getMessage());
+        }
+
+        try {
+            messageDao.add(new Message("username", "refused"));
+            fail("Expected the add to be refused");
+        } catch (UncheckedIOException e) {
+            // Refused
+        }
+
+        assertEquals(version, messageDao.getVersion());
+        assertEquals("hello", messageDao.get(1).getContent());
+        assertNull(messageDao.find(3));
+        messageDao.close();
+    }
+
+    /**
+     * A snapshot should not replace a failed log with a fresh one, which
+     * would make messages writable again
+     * @result snapshot and later writes throw UncheckedIOException
+     */
+    @Test
+    public void snapshotShouldNotReplaceFailedLog() throws IOException {
+
+        Path dir = folder.getRoot().toPath();
+        FailingChannel[] channel = new FailingChannel[1];
+
+        MessageDao messageDao = new MessageDao(new HeapMessageStore(), MessageDao.DEFAULT_CHANGE_RETENTION,
+                dir, 16, 0, file -> channel[0] = new FailingChannel(FileChannel.open(file,
+                        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)));
+
+        messageDao.add(new Message("username", "hello"));
+        channel[0].failing = true;
+
+        try {
+            messageDao.add(new Message("username", "lost"));
+            fail("Expected the failed write to be reported");
+        } catch (UncheckedIOException e) {
+            // Failed
+        }
+
+        try {
+            messageDao.snapshot();
+            fail("Expected the snapshot to be refused");
+        } catch (UncheckedIOException e) {
+            assertEquals("Disk failed", e.getCause().getMessage());
+        }
+
+        try {
+            messageDao.add(new Message("username", "refused"));
+            fail("Expected the add to be refused");
+        } catch (UncheckedIOException e) {
+            assertEquals("Disk failed", e.getCause().getMessage());
+        }
+
+        messageDao.close();
+    }
+
+    /**
+     * Delegates to a real FileChannel until `failing` is set, then fails
+     * every write and force like a broken disk
+     */
+    private static class FailingChannel extends FileChannel {
+
+        private final FileChannel channel;
+        private volatile boolean failing;
+
+        private FailingChannel(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private void check() throws IOException {
+            if(failing) {
+                throw new IOException("Disk failed");
+            }
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return channel.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return channel.read(dsts, offset, length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            check();
+            return channel.write(src);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            check();
+            return channel.write(srcs, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return channel.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            channel.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return channel.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            check();
+            channel.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            check();
+            channel.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return channel.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            check();
+            return channel.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return channel.read(dst, position);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            check();
+            return channel.write(src, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return channel.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return channel.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return channel.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            channel.close();
+        }
+    }
+}
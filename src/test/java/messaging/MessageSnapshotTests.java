@@ -0,0 +1,98 @@
+package messaging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class MessageSnapshotTests {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * A snapshot should hold every message present when it was taken,
+     * together with the sequence and counter high-water mark
+     * @result snapshot contains the stored messages
+     */
+    @Test
+    public void snapshotShouldContainAllMessages() throws IOException {
+
+        Path dir = folder.getRoot().toPath();
+
+        MessageDao messageDao = new MessageDao(dir, 16, 0);
+        messageDao.add(new Message("username", "hello"));
+        messageDao.add(new Message("another", "other"));
+        messageDao.add(new Message("username", "third"));
+        messageDao.remove(3);
+
+        MessageSnapshot snapshot = messageDao.snapshot();
+        messageDao.close();
+
+        assertEquals(2, snapshot.getCount());
+        assertEquals(3, snapshot.getCounter());
+        assertEquals(4, snapshot.getSequence());
+    }
+
+    /**
+     * Reopening should restore the snapshot plus every change logged after
+     * it, and logs covered by the snapshot should be deleted
+     * @result reopened dao contains the same messages and continues ids
+     */
+    @Test
+    public void reopenShouldRestoreSnapshotAndLaterChanges() throws IOException {
+
+        Path dir = folder.getRoot().toPath();
+
+        MessageDao messageDao = new MessageDao(dir, 16, 0);
+        messageDao.add(new Message("username", "hello"));
+        messageDao.add(new Message("another", "other"));
+        messageDao.snapshot();
+        messageDao.update(1, new Message("username", "edited"));
+        messageDao.remove(2);
+        messageDao.add(new Message("username", "third"));
+        messageDao.close();
+
+        assertFalse(Files.exists(dir.resolve("messages.1.log")));
+
+        MessageDao reopened = new MessageDao(dir, 16, 0);
+
+        assertEquals("{\"1\":{\"author\":\"username\",\"content\":\"edited\"}," +
+                "\"3\":{\"author\":\"username\",\"content\":\"third\"}}",
+                reopened.getAllMessages());
+        assertEquals(3, reopened.get(1).getVersion());
+        assertEquals(5, reopened.getVersion());
+        assertEquals(4, reopened.add(new Message("username", "fourth")));
+        reopened.close();
+    }
+
+    /**
+     * Loading a snapshot that was modified on disk should fail rather
+     * than restore wrong messages
+     * @result throws IOException
+     */
+    @Test(expected = IOException.class)
+    public void loadShouldRejectCorruptSnapshot() throws IOException {
+
+        Path dir = folder.getRoot().toPath();
+
+        MessageDao messageDao = new MessageDao(dir, 16, 0);
+        messageDao.add(new Message("username", "hello"));
+        messageDao.snapshot();
+        messageDao.close();
+
+        Path file = dir.resolve("messages.snapshot");
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] { 'X' }), 40);
+        }
+
+        MessageSnapshot.load(file, (id, message) -> { });
+    }
+}
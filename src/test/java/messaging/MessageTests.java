@@ -1,7 +1,10 @@
 package messaging;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import org.junit.Test;
+import java.nio.charset.StandardCharsets;
 
 public class MessageTests {
 
@@ -43,4 +46,36 @@ public class MessageTests {
         assertEquals(expect, message.toString());
     }
 
+    /**
+     * toString should escape characters that are not allowed verbatim
+     * inside Json strings
+     * @result returns Json representation with escaped content
+     */
+    @Test
+    public void toStringShouldEscapeContent() {
+
+        Message message = new Message("username", "say \"hi\"\n");
+
+        String expect = "{\"author\":\"username\",\"content\":\"say \\\"hi\\\"\\n\"}";
+
+        assertEquals(expect, message.toString());
+    }
+
+    /**
+     * toJson should return the UTF-8 encoded Json representation, computed
+     * once and reused on later calls
+     * @result returns the same cached byte array on every call
+     */
+    @Test
+    public void toJsonShouldReturnCachedUtf8Representation() {
+
+        Message message = new Message("username", "h\u00e9llo");
+
+        byte[] expect = "{\"author\":\"username\",\"content\":\"h\u00e9llo\"}"
+                .getBytes(StandardCharsets.UTF_8);
+
+        assertArrayEquals(expect, message.toJson());
+        assertSame(message.toJson(), message.toJson());
+    }
+
 }
@@ -0,0 +1,131 @@
+package messaging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class OffHeapMessageStoreTests {
+
+    /**
+     * get should return a message equal to the stored one
+     * @result returns message with the same author and content
+     */
+    @Test
+    public void getShouldReturnStoredMessage() {
+
+        OffHeapMessageStore store = new OffHeapMessageStore(1 << 16);
+        store.put(1, new Message("username", "h\u00e9llo"));
+
+        Message message = store.get(1);
+
+        assertEquals("username", message.getAuthor());
+        assertEquals("h\u00e9llo", message.getContent());
+        assertTrue(store.contains(1));
+    }
+
+    /**
+     * put should replace the stored message and remove should delete it
+     * @result replaced message is returned, removed message is gone
+     */
+    @Test
+    public void putShouldReplaceAndRemoveShouldDelete() {
+
+        OffHeapMessageStore store = new OffHeapMessageStore(1 << 16);
+        store.put(1, new Message("username", "hello"));
+        store.put(1, new Message("username", "another"));
+
+        assertEquals("another", store.get(1).getContent());
+
+        assertTrue(store.remove(1));
+        assertFalse(store.remove(1));
+        assertNull(store.get(1));
+        assertFalse(store.contains(1));
+    }
+
+    /**
+     * Messages should stay intact when many are stored across slabs and
+     * freed blocks are reused
+     * @result every remaining message has its original content
+     */
+    @Test
+    public void storeShouldKeepMessagesAcrossSlabsAndReusedBlocks() {
+
+        OffHeapMessageStore store = new OffHeapMessageStore(1 << 12);
+
+        for(long id = 1; id <= 2000; id++) {
+            store.put(id, new Message("user" + id, "content " + id));
+        }
+        for(long id = 1; id <= 2000; id += 2) {
+            store.remove(id);
+        }
+        for(long id = 2001; id <= 3000; id++) {
+            store.put(id, new Message("user" + id, "content " + id));
+        }
+
+        for(long id = 1; id <= 3000; id++) {
+            if(id <= 2000 && id % 2 == 1) {
+                assertNull(store.get(id));
+            } else {
+                assertEquals("user" + id, store.get(id).getAuthor());
+                assertEquals("content " + id, store.get(id).getContent());
+            }
+        }
+    }
+
+    /**
+     * Id 0 marks empty index slots, so it should never be found, including
+     * after removes have shifted entries into the slots they freed
+     * @result id 0 is missing and every remaining message is found
+     */
+    @Test
+    public void idZeroShouldBeMissingAfterRemoves() {
+
+        OffHeapMessageStore store = new OffHeapMessageStore(1 << 16);
+
+        assertNull(store.get(0));
+        assertFalse(store.contains(0));
+
+        for(long id = 1; id <= 1000; id++) {
+            store.put(id, new Message("username", "content " + id));
+        }
+        for(long id = 1; id <= 1000; id += 3) {
+            assertTrue(store.remove(id));
+        }
+
+        assertNull(store.get(0));
+        assertFalse(store.contains(0));
+        assertFalse(store.remove(0));
+
+        for(long id = 1; id <= 1000; id++) {
+            if(id % 3 == 1) {
+                assertNull(store.get(id));
+                assertFalse(store.contains(id));
+            } else {
+                assertEquals("content " + id, store.get(id).getContent());
+            }
+        }
+    }
+
+    /**
+     * A MessageDao backed by off-heap storage should serve the same
+     * listing as the default one
+     * @result returns Json representation of all messages
+     */
+    @Test
+    public void messageDaoShouldWorkWithOffHeapStore() {
+
+        MessageDao messageDao = new MessageDao(new OffHeapMessageStore(1 << 16));
+        messageDao.add(new Message("username", "hello"));
+        messageDao.add(new Message("another", "other"));
+        messageDao.update(1, new Message("username", "edited"));
+
+        String expect = "{\"1\":" +
+                "{\"author\":\"username\",\"content\":\"edited\"}," +
+                "\"2\":" +
+                "{\"author\":\"another\",\"content\":\"other\"}}";
+
+        assertEquals(expect, messageDao.getAllMessages());
+    }
+}
@@ -0,0 +1,80 @@
+package messaging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import java.util.concurrent.TimeUnit;
+
+public class RateLimiterTests {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * A bucket should allow its burst at once and then the sustained rate
+     * @result requests beyond the burst wait for the next token
+     */
+    @Test
+    public void acquireShouldAllowBurstThenRate() {
+
+        RateLimiter limiter = new RateLimiter(10, 3);
+        long now = 1000 * SECOND;
+
+        for(int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.acquire("linda", now));
+        }
+
+        long wait = limiter.acquire("linda", now);
+        assertTrue(wait > 0 && wait <= SECOND / 10);
+
+        assertEquals(0, limiter.acquire("linda", now + wait));
+        assertTrue(limiter.acquire("linda", now + wait) > 0);
+    }
+
+    /**
+     * Users should have separate buckets
+     * @result anna is not limited by linda's requests
+     */
+    @Test
+    public void acquireShouldLimitEachKeySeparately() {
+
+        RateLimiter limiter = new RateLimiter(1, 1);
+        long now = 1000 * SECOND;
+
+        assertEquals(0, limiter.acquire("linda", now));
+        assertTrue(limiter.acquire("linda", now) > 0);
+        assertEquals(0, limiter.acquire("anna", now));
+    }
+
+    /**
+     * A limiter without a rate should never limit
+     * @result 0 for every request
+     */
+    @Test
+    public void acquireShouldNotLimitWithoutRate() {
+
+        RateLimiter limiter = new RateLimiter(0, 0);
+
+        for(int i = 0; i < 1000; i++) {
+            assertEquals(0, limiter.acquire("linda"));
+        }
+        assertEquals(0, limiter.size());
+    }
+
+    /**
+     * Buckets that have refilled should be dropped, and others kept
+     * @result only the bucket still refilling is left
+     */
+    @Test
+    public void evictIdleShouldDropFullBuckets() {
+
+        RateLimiter limiter = new RateLimiter(1, 5);
+        long now = 1000 * SECOND;
+
+        limiter.acquire("linda", now);
+        limiter.acquire("anna", now + 10 * SECOND);
+
+        limiter.evictIdle(now + 2 * SECOND);
+
+        assertEquals(1, limiter.size());
+    }
+}
@@ -0,0 +1,143 @@
+package messaging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SearchIndexTests {
+
+    private static List<Long> ids(List<SearchIndex.Hit> hits) {
+        List<Long> ids = new ArrayList<>();
+        for(SearchIndex.Hit hit : hits) {
+            ids.add(hit.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * search should only return messages containing every query term,
+     * ignoring case and punctuation
+     * @result ids of messages matching all terms
+     */
+    @Test
+    public void searchShouldMatchAllTerms() {
+
+        SearchIndex index = new SearchIndex();
+        index.add(1, new Message("username", "Hello world"), null);
+        index.add(2, new Message("username", "hello there"), null);
+        index.add(3, new Message("username", "the world, hello!"), null);
+
+        assertEquals(Arrays.asList(3L, 1L), ids(index.search("WORLD hello", 10)));
+        assertTrue(index.search("hello nobody", 10).isEmpty());
+    }
+
+    /**
+     * search should rank messages repeating a term above messages
+     * mentioning it once, and return at most `limit` hits
+     * @result best matches first, limited to `limit`
+     */
+    @Test
+    public void searchShouldRankAndLimitResults() {
+
+        SearchIndex index = new SearchIndex();
+        index.add(1, new Message("username", "cats"), null);
+        index.add(2, new Message("username", "cats cats cats"), null);
+        index.add(3, new Message("username", "cats and dogs"), null);
+        index.add(4, new Message("username", "dogs"), null);
+
+        List<SearchIndex.Hit> hits = index.search("cats", 2);
+
+        assertEquals(Arrays.asList(2L, 3L), ids(hits));
+        assertTrue(hits.get(0).getScore() > hits.get(1).getScore());
+    }
+
+    /**
+     * Updated and removed messages should no longer be found by their
+     * old content
+     * @result only current content matches
+     */
+    @Test
+    public void searchShouldFollowUpdatesAndRemovals() {
+
+        SearchIndex index = new SearchIndex();
+        Message first = new Message("username", "hello world");
+        Message second = new Message("username", "hello again");
+        index.add(1, first, null);
+        index.add(2, second, null);
+
+        Message edited = new Message("username", "goodbye world");
+        index.add(1, edited, first);
+        index.remove(2, second);
+
+        assertTrue(index.search("hello", 10).isEmpty());
+        assertEquals(Arrays.asList(1L), ids(index.search("goodbye world", 10)));
+    }
+
+    /**
+     * Intersections should be correct across many posting blocks, also
+     * after ids are re-indexed out of order
+     * @result every id matching both terms is found
+     */
+    @Test
+    public void searchShouldIntersectLargePostingLists() {
+
+        SearchIndex index = new SearchIndex();
+
+        for(long id = 1; id <= 5000; id++) {
+            String content = "common" + (id % 3 == 0 ? " three" : "") + (id % 5 == 0 ? " five" : "");
+            index.add(id, new Message("username", content), null);
+        }
+        // Re-index some ids so they are inserted into existing blocks
+        for(long id = 7; id <= 5000; id += 7) {
+            Message previous = new Message("username", "common" + (id % 3 == 0 ? " three" : "") +
+                    (id % 5 == 0 ? " five" : ""));
+            index.add(id, new Message("username", "common three five"), previous);
+        }
+
+        int expected = 0;
+        for(long id = 1; id <= 5000; id++) {
+            if((id % 3 == 0 && id % 5 == 0) || id % 7 == 0) {
+                expected++;
+            }
+        }
+
+        assertEquals(expected, index.search("five three", 10000).size());
+        assertEquals(5000, index.search("common", 10000).size());
+    }
+
+    /**
+     * Searches running while the index changes should see every message
+     * that was indexed before they started and never changed, since they
+     * scan a snapshot of the posting lists
+     * @result every stable message is found by every search
+     */
+    @Test
+    public void searchShouldSeeConsistentPostingsWhileIndexChanges() throws InterruptedException {
+
+        SearchIndex index = new SearchIndex();
+
+        for(long id = 1; id <= 1000; id++) {
+            index.add(id, new Message("username", "stable common"), null);
+        }
+
+        Thread writer = new Thread(() -> {
+            for(long id = 1001; id <= 20000; id++) {
+                index.add(id, new Message("username", "common"), null);
+                if(id % 3 == 0) {
+                    index.remove(id - 1, new Message("username", "common"));
+                }
+            }
+        });
+        writer.start();
+
+        while(writer.isAlive()) {
+            assertEquals(1000, index.search("common stable", 100000).size());
+        }
+        writer.join();
+
+        assertEquals(1000, index.search("common stable", 100000).size());
+    }
+}
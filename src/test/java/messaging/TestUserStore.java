@@ -0,0 +1,25 @@
+package messaging;
+
+import java.util.Collections;
+
+/**
+ * Accepts any username with the password `password` as a USER, so tests
+ * can authenticate as whichever author they need
+ */
+class TestUserStore implements UserStore {
+
+    @Override
+    public User authenticate(String username, String password) {
+        return "password".equals(password)
+                ? new User(username, Collections.singleton("USER"))
+                : null;
+    }
+
+    /**
+     * Authenticates with a TestUserStore and does not limit request rates
+     */
+    static AuthenticationFeature feature() {
+        return new AuthenticationFeature(new TestUserStore(), new BoundedCache<>(100),
+                new RateLimiter(0, 0), new RateLimiter(0, 0));
+    }
+}